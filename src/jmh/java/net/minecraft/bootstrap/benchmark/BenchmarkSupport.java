@@ -0,0 +1,132 @@
+package net.minecraft.bootstrap.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Proxy;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import net.minecraft.bootstrap.Bootstrap;
+
+public class BenchmarkSupport {
+    private static final PrintStream NULL_STREAM = new PrintStream(new OutputStream() {
+        @Override
+        public void write(final int b) {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    });
+
+    private static PrintStream originalOut;
+
+    public static File createWorkDir() throws IOException {
+        return Files.createTempDirectory("bootstrap-bench").toFile();
+    }
+
+    public static void deleteRecursively(final File file) {
+        final File[] children = file.listFiles();
+        if(children != null)
+            for(final File child : children)
+                deleteRecursively(child);
+        file.delete();
+    }
+
+    public static byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    public static File writeRandomFile(final File file, final int length) throws IOException {
+        final OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(randomBytes(length));
+        }
+        finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    public static byte[] createLauncherJar(final int paddingLength, final long seed) throws IOException {
+        return createLauncherJar(paddingLength, seed, 0);
+    }
+
+    // Jars of the same seed share their padding, a changed build adds changedLength bytes after it.
+    public static byte[] createLauncherJar(final int paddingLength, final long seed, final int changedLength) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(paddingLength + 65536);
+        final JarOutputStream jar = new JarOutputStream(bytes);
+        try {
+            jar.putNextEntry(new JarEntry("net/minecraft/launcher/Launcher.class"));
+            jar.write(createLauncherClass());
+            jar.closeEntry();
+
+            // Random bytes don't deflate, so the padding keeps the download the size it is asked to be.
+            final byte[] padding = new byte[paddingLength];
+            new Random(seed).nextBytes(padding);
+            jar.putNextEntry(new JarEntry("padding.bin"));
+            jar.write(padding);
+            jar.closeEntry();
+
+            if(changedLength > 0) {
+                final byte[] changed = new byte[changedLength];
+                new Random(seed + changedLength).nextBytes(changed);
+                jar.putNextEntry(new JarEntry("changed.bin"));
+                jar.write(changed);
+                jar.closeEntry();
+            }
+        }
+        finally {
+            jar.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    // Compiled from src/jmh/stub into launcher-stub/, where the class loader doesn't look for classes: a stub on the
+    // benchmark classpath would be found parent-first, and launcher.jar would never be read.
+    private static byte[] createLauncherClass() throws IOException {
+        final InputStream inputStream = BenchmarkSupport.class.getResourceAsStream("/launcher-stub/net/minecraft/launcher/Launcher.class");
+        if(inputStream == null)
+            throw new IOException("Stub launcher wasn't compiled, build with -Pbenchmark");
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while((read = inputStream.read(buffer)) != -1)
+                bytes.write(buffer, 0, read);
+        }
+        finally {
+            inputStream.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    public static synchronized void silenceStdout() {
+        if(originalOut == null) {
+            originalOut = System.out;
+            System.setOut(NULL_STREAM);
+        }
+    }
+
+    public static synchronized void restoreStdout() {
+        if(originalOut != null) {
+            System.setOut(originalOut);
+            originalOut = null;
+        }
+    }
+
+    public static Bootstrap createBootstrap(final File workDir, final Proxy proxy, final boolean headless) {
+        silenceStdout();
+        return new Bootstrap(workDir, proxy, null, new String[0], headless);
+    }
+}
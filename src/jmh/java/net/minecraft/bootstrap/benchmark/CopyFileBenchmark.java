@@ -0,0 +1,65 @@
+package net.minecraft.bootstrap.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.bootstrap.Bootstrap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyFileBenchmark {
+    @Param({ "1048576", "16777216" })
+    public int fileSize;
+
+    @Param({ "true", "false" })
+    public boolean targetExists;
+
+    private File workDir;
+    private File source;
+    private File target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = BenchmarkSupport.createWorkDir();
+        source = BenchmarkSupport.writeRandomFile(new File(workDir, "launcher.jar.new"), fileSize);
+        target = new File(workDir, "launcher.jar");
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareTarget() throws IOException {
+        if(targetExists)
+            Bootstrap.copyFile(source, target);
+        else
+            target.delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public long copyFile() throws IOException {
+        Bootstrap.copyFile(source, target);
+        return target.length();
+    }
+}
@@ -0,0 +1,146 @@
+package net.minecraft.bootstrap.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.bootstrap.Bootstrap;
+import net.minecraft.bootstrap.BootstrapConstants;
+import net.minecraft.bootstrap.Downloader;
+import net.minecraft.bootstrap.Telemetry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DownloaderBenchmark {
+    @Param({ "4194304" })
+    public int fileSize;
+
+    @Param({ "stream", "resumable", "segmented" })
+    public String mode;
+
+    private File workDir;
+    private File target;
+    private HttpServer server;
+    private ExecutorService executor;
+    private Proxy proxy;
+    private Bootstrap bootstrap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        final byte[] payload = BenchmarkSupport.randomBytes(fileSize);
+        final String md5 = String.format("%1$032x", new Object[] { new BigInteger(1, MessageDigest.getInstance("MD5").digest(payload)) });
+
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                serve(exchange, payload, md5);
+            }
+        });
+        server.start();
+
+        // The downloader talks to the real launcher URL, so the stand-in is reached as an HTTP proxy.
+        proxy = new Proxy(Proxy.Type.HTTP, server.getAddress());
+
+        workDir = BenchmarkSupport.createWorkDir();
+        target = new File(workDir, "launcher.jar.new");
+        bootstrap = BenchmarkSupport.createBootstrap(workDir, proxy, true);
+        bootstrap.setLzmaEnabled(false);
+    }
+
+    private void serve(final HttpExchange exchange, final byte[] payload, final String md5) throws IOException {
+        exchange.getRequestBody().close();
+        // Only the launcher exists, a chunk manifest or anything else must not cost a 4 MiB body.
+        if(!exchange.getRequestURI().getPath().endsWith("/" + BootstrapConstants.LAUNCHER_FILE)) {
+            exchange.sendResponseHeaders(404, -1L);
+            exchange.close();
+            return;
+        }
+
+        if(!"stream".equals(mode))
+            exchange.getResponseHeaders().set("ETag", new StringBuilder().append('"').append(md5).append('"').toString());
+        if("segmented".equals(mode))
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+
+        int start = 0;
+        int end = payload.length - 1;
+        final String range = exchange.getRequestHeaders().getFirst("Range");
+        if(range != null && "segmented".equals(mode) && range.startsWith("bytes=")) {
+            final String[] bounds = range.substring(6).split("-", 2);
+            start = Integer.parseInt(bounds[0]);
+            if(bounds.length > 1 && !bounds[1].isEmpty())
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+            exchange.getResponseHeaders().set("Content-Range", new StringBuilder().append("bytes ").append(start).append('-').append(end).append('/').append(payload.length).toString());
+            exchange.sendResponseHeaders(206, end - start + 1);
+        }
+        else
+            exchange.sendResponseHeaders(200, payload.length);
+
+        final OutputStream outputStream = exchange.getResponseBody();
+        try {
+            outputStream.write(payload, start, end - start + 1);
+        }
+        finally {
+            outputStream.close();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTarget() {
+        target.delete();
+        new File(target.getPath() + ".part").delete();
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearTelemetry() {
+        Telemetry.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+        BenchmarkSupport.restoreStdout();
+        BenchmarkSupport.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public long run() {
+        final Downloader.Controller controller = new Downloader.Controller();
+        new Downloader(controller, bootstrap, proxy, null, target).run();
+        if(controller.hasDownloadedLatch.getCount() != 0L)
+            throw new IllegalStateException("Download failed");
+        return target.length();
+    }
+}
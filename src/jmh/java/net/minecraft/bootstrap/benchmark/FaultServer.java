@@ -0,0 +1,400 @@
+package net.minecraft.bootstrap.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import net.minecraft.bootstrap.BootstrapConstants;
+import net.minecraft.bootstrap.ChunkManifest;
+import net.minecraft.bootstrap.PatchGenerator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class FaultServer {
+    public static class Script {
+        private long latency;
+        private long bandwidth;
+        private int errors;
+        private int errorStatus = 503;
+        private int disconnects;
+        private long disconnectAfter;
+        private int wrongETags;
+        private int corruptions;
+        private int corruptAt;
+
+        // Milliseconds to wait before answering any launcher request.
+        public Script latency(final long latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        // Bytes per second shared by all launcher bodies, like a slow link, 0 for unlimited.
+        public Script bandwidth(final long bandwidth) {
+            this.bandwidth = bandwidth;
+            return this;
+        }
+
+        // The first count launcher requests are answered with status instead.
+        public Script errors(final int count, final int status) {
+            errors = count;
+            errorStatus = status;
+            return this;
+        }
+
+        // The first count launcher bodies longer than the given number of bytes are cut off after it, ranged or not.
+        public Script disconnects(final int count, final long after) {
+            disconnects = count;
+            disconnectAfter = after;
+            return this;
+        }
+
+        // The first count downloads, and the ranges that belong to them, carry an ETag that isn't their MD5.
+        public Script wrongETags(final int count) {
+            wrongETags = count;
+            return this;
+        }
+
+        // The first count launcher bodies that cover the given offset have the byte there flipped.
+        public Script corruptions(final int count, final int offset) {
+            corruptions = count;
+            corruptAt = offset;
+            return this;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 16384;
+    private static final String WRONG_ETAG = "\"00000000000000000000000000000000\"";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger launcherRequests = new AtomicInteger();
+    private final AtomicInteger launcherDownloads = new AtomicInteger();
+    private final AtomicInteger launcherDisconnects = new AtomicInteger();
+    private final AtomicInteger launcherCorruptions = new AtomicInteger();
+
+    private volatile byte[] payload;
+    private volatile String md5;
+    private volatile Script script = new Script();
+    private volatile String patchPath;
+    private volatile byte[] patch;
+    private volatile Map<String, byte[]> artifacts = Collections.emptyMap();
+    private volatile byte[] manifest;
+    private volatile byte[] chunks;
+
+    private long linkIdle = Long.MIN_VALUE;
+
+    public FaultServer(final byte[] payload) throws IOException {
+        setPayload(payload);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50);
+        server.createContext("/", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    FaultServer.this.handle(exchange);
+                }
+                finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static String getMd5(final byte[] bytes) {
+        try {
+            return toHex(MessageDigest.getInstance("MD5").digest(bytes));
+        }
+        catch(final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void setPayload(final byte[] payload) {
+        md5 = getMd5(payload);
+        this.payload = payload;
+    }
+
+    // Served at the patch path of the launcher with the given MD5, until the next call.
+    public void setPatch(final String sourceMd5, final byte[] patch) {
+        this.patch = patch;
+        patchPath = sourceMd5 == null ? null : "/" + String.format(BootstrapConstants.PATCH_FILE, new Object[] { sourceMd5 });
+    }
+
+    // Listed in the manifest.json served from now on, each at its path below the mirror.
+    public void setArtifacts(final Map<String, byte[]> artifacts) throws IOException {
+        final StringBuilder builder = new StringBuilder("{\"artifacts\":[");
+        for(final Map.Entry<String, byte[]> artifact : artifacts.entrySet()) {
+            if(builder.charAt(builder.length() - 1) != '[')
+                builder.append(',');
+            builder.append("{\"path\":\"").append(artifact.getKey()).append("\",\"size\":").append(artifact.getValue().length).append(",\"hash\":\"").append(getMd5(artifact.getValue())).append("\"}");
+        }
+        manifest = builder.append("]}").toString().getBytes("UTF-8");
+        this.artifacts = new LinkedHashMap<String, byte[]>(artifacts);
+    }
+
+    // Serves a launcher.jar.chunks for the current payload cut into chunks of the given size, or none for 0.
+    public void setChunks(final int chunkSize) throws IOException {
+        if(chunkSize <= 0) {
+            chunks = null;
+            return;
+        }
+
+        final byte[] payload = this.payload;
+        final List<byte[]> hashes = new ArrayList<byte[]>();
+        final StringBuilder builder = new StringBuilder();
+        try {
+            for(int start = 0; start < payload.length; start += chunkSize) {
+                final MessageDigest digest = MessageDigest.getInstance(ChunkManifest.ALGORITHM);
+                digest.update(payload, start, Math.min(chunkSize, payload.length - start));
+                final byte[] hash = digest.digest();
+                hashes.add(hash);
+                builder.append(builder.length() == 0 ? "\"" : ",\"").append(toHex(hash)).append('"');
+            }
+            chunks = new StringBuilder().append("{\"md5\":\"").append(md5).append("\",\"length\":").append(payload.length).append(",\"chunkSize\":").append(chunkSize).append(",\"root\":\"").append(toHex(ChunkManifest.getRoot(hashes))).append("\",\"chunks\":[").append(builder).append("]}").toString().getBytes("UTF-8");
+        }
+        catch(final NoSuchAlgorithmException e) {
+            throw new IOException(e.toString());
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder builder = new StringBuilder();
+        for(final byte b : bytes)
+            builder.append(String.format("%02x", new Object[] { Integer.valueOf(b & 0xFF) }));
+        return builder.toString();
+    }
+
+    public static byte[] createPatch(final byte[] source, final byte[] target) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PatchGenerator.generate(source, target, bytes);
+        return bytes.toByteArray();
+    }
+
+    public String getPayloadMd5() {
+        return md5;
+    }
+
+    public void setScript(final Script script) {
+        this.script = script;
+        reset();
+    }
+
+    public void reset() {
+        bytesSent.set(0L);
+        requests.set(0);
+        launcherRequests.set(0);
+        launcherDownloads.set(0);
+        launcherDisconnects.set(0);
+        launcherCorruptions.set(0);
+        synchronized(this) {
+            linkIdle = Long.MIN_VALUE;
+        }
+    }
+
+    public String getMirror() {
+        return new StringBuilder().append("http://127.0.0.1:").append(server.getAddress().getPort()).append("/").toString();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        final String path = exchange.getRequestURI().getPath();
+        if(path.equals("/" + BootstrapConstants.LAUNCHER_FILE))
+            serveLauncher(exchange);
+        else if(path.equals("/" + BootstrapConstants.MD5_FILE)) {
+            final byte[] body = md5.getBytes("UTF-8");
+            send(exchange, 200, body, 0, body.length, 0L, -1L);
+        }
+        else if(path.equals("/" + BootstrapConstants.CHUNKS_FILE) && chunks != null) {
+            final byte[] body = chunks;
+            send(exchange, 200, body, 0, body.length, 0L, -1L);
+        }
+        else if(path.equals("/" + BootstrapConstants.MANIFEST_FILE) && manifest != null) {
+            final byte[] body = manifest;
+            send(exchange, 200, body, 0, body.length, 0L, -1L);
+        }
+        else if(artifacts.containsKey(path.substring(1))) {
+            final byte[] body = artifacts.get(path.substring(1));
+            send(exchange, 200, body, 0, body.length, script.bandwidth, -1L);
+        }
+        else if(path.equals(patchPath)) {
+            final byte[] body = patch;
+            send(exchange, 200, body, 0, body.length, script.bandwidth, -1L);
+        }
+        else
+            exchange.sendResponseHeaders(404, -1L);
+    }
+
+    private void serveLauncher(final HttpExchange exchange) throws IOException {
+        final Script script = this.script;
+        byte[] payload = this.payload;
+        final String eTag = new StringBuilder().append('"').append(md5).append('"').toString();
+        final int request = launcherRequests.incrementAndGet();
+
+        sleep(script.latency);
+
+        if(request <= script.errors) {
+            if(script.errorStatus == 429 || script.errorStatus / 100 == 5)
+                exchange.getResponseHeaders().set("Retry-After", "0");
+            exchange.sendResponseHeaders(script.errorStatus, -1L);
+            return;
+        }
+
+        final String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if(ifNoneMatch != null && ifNoneMatch.contains(eTag)) {
+            exchange.getResponseHeaders().set("ETag", eTag);
+            exchange.sendResponseHeaders(304, -1L);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().set("Content-Type", "application/java-archive");
+
+        // A download starts with a request that has no If-Range, be it a probe or a full body.
+        final String range = exchange.getRequestHeaders().getFirst("Range");
+        final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        final String servedETag = WRONG_ETAG.equals(ifRange) || ifRange == null && launcherDownloads.incrementAndGet() <= script.wrongETags ? WRONG_ETAG : eTag;
+        exchange.getResponseHeaders().set("ETag", servedETag);
+        if(range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(servedETag))) {
+            final String[] bounds = range.substring(6).split("-", -1);
+            final int start = Integer.parseInt(bounds[0].trim());
+            final int end = bounds[1].trim().isEmpty() ? payload.length : Math.min(payload.length, Integer.parseInt(bounds[1].trim()) + 1);
+            if(start >= end) {
+                exchange.getResponseHeaders().set("Content-Range", new StringBuilder().append("bytes */").append(payload.length).toString());
+                exchange.sendResponseHeaders(416, -1L);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Range", new StringBuilder().append("bytes ").append(start).append("-").append(end - 1).append("/").append(payload.length).toString());
+            payload = corrupt(script, payload, start, end);
+            send(exchange, 206, payload, start, end - start, script.bandwidth, disconnectAfter(script, end - start));
+            return;
+        }
+
+        payload = corrupt(script, payload, 0, payload.length);
+        send(exchange, 200, payload, 0, payload.length, script.bandwidth, disconnectAfter(script, payload.length));
+    }
+
+    private byte[] corrupt(final Script script, final byte[] payload, final int start, final int end) {
+        if(script.corruptAt < start || script.corruptAt >= end || launcherCorruptions.incrementAndGet() > script.corruptions)
+            return payload;
+
+        final byte[] corrupted = payload.clone();
+        corrupted[script.corruptAt] ^= 0xFF;
+        return corrupted;
+    }
+
+    private long disconnectAfter(final Script script, final int length) {
+        return length > script.disconnectAfter && launcherDisconnects.incrementAndGet() <= script.disconnects ? script.disconnectAfter : -1L;
+    }
+
+    private void send(final HttpExchange exchange, final int status, final byte[] body, final int offset, final int length, final long bandwidth, final long disconnectAfter) throws IOException {
+        exchange.sendResponseHeaders(status, exchange.getRequestMethod().equals("HEAD") ? -1L : length);
+        if(exchange.getRequestMethod().equals("HEAD"))
+            return;
+
+        final OutputStream outputStream = exchange.getResponseBody();
+        int written = 0;
+        while(written < length) {
+            int count = Math.min(BUFFER_SIZE, length - written);
+            if(disconnectAfter >= 0L)
+                count = (int) Math.min(count, disconnectAfter - written);
+            if(count <= 0) {
+                // Closing short of Content-Length makes the server drop the connection mid-body.
+                outputStream.flush();
+                return;
+            }
+
+            outputStream.write(body, offset + written, count);
+            written += count;
+            bytesSent.addAndGet(count);
+
+            if(bandwidth > 0L)
+                sleep(reserve(count, bandwidth) / 1000000L);
+        }
+        outputStream.close();
+    }
+
+    // Parallel ranges queue behind each other on the one link instead of each getting the full rate.
+    private synchronized long reserve(final int count, final long bandwidth) {
+        final long now = System.nanoTime();
+        linkIdle = Math.max(now, linkIdle) + count * 1000000000L / bandwidth;
+        return linkIdle - now;
+    }
+
+    private static void sleep(final long millis) throws InterruptedIOException {
+        if(millis <= 0L)
+            return;
+
+        try {
+            Thread.sleep(millis);
+        }
+        catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while delaying the response");
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final OptionParser optionParser = new OptionParser();
+        final OptionSpec<File> payloadOption = optionParser.accepts("payload", "Launcher jar to serve").withRequiredArg().ofType(File.class).required();
+        final OptionSpec<Long> latencyOption = optionParser.accepts("latency", "Delay before each launcher response in ms").withRequiredArg().ofType(Long.class).defaultsTo(Long.valueOf(0L), new Long[0]);
+        final OptionSpec<Long> bandwidthOption = optionParser.accepts("bandwidth", "Launcher body rate in kb/s, 0 for unlimited").withRequiredArg().ofType(Long.class).defaultsTo(Long.valueOf(0L), new Long[0]);
+        final OptionSpec<Integer> errorsOption = optionParser.accepts("errors", "Number of launcher requests answered with --errorStatus").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(0), new Integer[0]);
+        final OptionSpec<Integer> errorStatusOption = optionParser.accepts("errorStatus", "Status of the failed launcher requests").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(503), new Integer[0]);
+        final OptionSpec<Integer> disconnectsOption = optionParser.accepts("disconnects", "Number of launcher bodies longer than --disconnectAfter bytes cut off after it").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(0), new Integer[0]);
+        final OptionSpec<Long> disconnectAfterOption = optionParser.accepts("disconnectAfter", "Bytes sent before a disconnect").withRequiredArg().ofType(Long.class).defaultsTo(Long.valueOf(0L), new Long[0]);
+        final OptionSpec<File> patchFromOption = optionParser.accepts("patchFrom", "Installed launcher jar to serve a patch from").withRequiredArg().ofType(File.class);
+        final OptionSpec<Integer> wrongETagsOption = optionParser.accepts("wrongETags", "Number of launcher downloads sent with a wrong ETag").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(0), new Integer[0]);
+        final OptionSpec<Integer> chunkSizeOption = optionParser.accepts("chunkSize", "Serve a launcher.jar.chunks with chunks of this many bytes").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(0), new Integer[0]);
+        final OptionSpec<Integer> corruptionsOption = optionParser.accepts("corruptions", "Number of launcher bodies covering --corruptAt sent with that byte flipped").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(0), new Integer[0]);
+        final OptionSpec<Integer> corruptAtOption = optionParser.accepts("corruptAt", "Offset of the flipped byte").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.valueOf(0), new Integer[0]);
+        final OptionSet optionSet = optionParser.parse(args);
+
+        final FaultServer server = new FaultServer(Files.readAllBytes(optionSet.valueOf(payloadOption).toPath()));
+        server.setScript(new Script().latency(optionSet.valueOf(latencyOption).longValue()).bandwidth(optionSet.valueOf(bandwidthOption).longValue() * 1024L).errors(optionSet.valueOf(errorsOption).intValue(), optionSet.valueOf(errorStatusOption).intValue()).disconnects(optionSet.valueOf(disconnectsOption).intValue(), optionSet.valueOf(disconnectAfterOption).longValue()).wrongETags(optionSet.valueOf(wrongETagsOption).intValue()).corruptions(optionSet.valueOf(corruptionsOption).intValue(), optionSet.valueOf(corruptAtOption).intValue()));
+        server.setChunks(optionSet.valueOf(chunkSizeOption).intValue());
+        if(optionSet.has(patchFromOption)) {
+            final byte[] source = Files.readAllBytes(optionSet.valueOf(patchFromOption).toPath());
+            server.setPatch(getMd5(source), createPatch(source, server.payload));
+        }
+        System.out.println(new StringBuilder().append("Serving ").append(server.getPayloadMd5()).append(", start the bootstrap with --mirror ").append(server.getMirror()).toString());
+    }
+}
@@ -0,0 +1,62 @@
+package net.minecraft.bootstrap.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.bootstrap.Bootstrap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// What println costs the thread that logs: the console, bootstrap.log and the window's pending queue. The fork has no
+// display, so nothing drains the queue onto the EDT and the text area's updates aren't part of the score.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LogAppendBenchmark {
+    private static final String LINE = "Downloading: http://dl.rellynn.eu/launcher/launcher.jar (try 1/10)";
+
+    private File workDir;
+    private Bootstrap bootstrap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = BenchmarkSupport.createWorkDir();
+        // Windowed mode without a display: the frame never appears, so the log sink keeps its pending queue bounded.
+        bootstrap = BenchmarkSupport.createBootstrap(workDir, Proxy.NO_PROXY, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.restoreStdout();
+        BenchmarkSupport.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void println() {
+        bootstrap.println(LINE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void printlnContended() {
+        bootstrap.println(LINE);
+    }
+}
@@ -0,0 +1,157 @@
+package net.minecraft.bootstrap.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.bootstrap.Bootstrap;
+import net.minecraft.bootstrap.Telemetry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Md5Benchmark {
+    // Only the hand-rolled readers take a buffer, so only they run once per size.
+    @State(Scope.Thread)
+    public static class Buffers {
+        @Param({ "8192", "65536", "1048576" })
+        public int bufferSize;
+
+        private ByteBuffer heapBuffer;
+        private ByteBuffer directBuffer;
+        private byte[] arrayBuffer;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            heapBuffer = ByteBuffer.allocate(bufferSize);
+            directBuffer = ByteBuffer.allocateDirect(bufferSize);
+            arrayBuffer = new byte[bufferSize];
+        }
+    }
+
+    private static final long MAP_SIZE = 16777216L;
+
+    @Param({ "4194304" })
+    public int fileSize;
+
+    private File workDir;
+    private File file;
+    private Bootstrap bootstrap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = BenchmarkSupport.createWorkDir();
+        file = BenchmarkSupport.writeRandomFile(new File(workDir, "launcher.jar"), fileSize);
+        bootstrap = BenchmarkSupport.createBootstrap(workDir, Proxy.NO_PROXY, true);
+        bootstrap.getMd5(file);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearTelemetry() {
+        Telemetry.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.restoreStdout();
+        BenchmarkSupport.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public String computeMd5() {
+        return bootstrap.computeMd5(file);
+    }
+
+    @Benchmark
+    public String getMd5Cached() {
+        return bootstrap.getMd5(file);
+    }
+
+    @Benchmark
+    public byte[] stream(final Buffers buffers) throws IOException, NoSuchAlgorithmException {
+        final DigestInputStream stream = new DigestInputStream(new FileInputStream(file), MessageDigest.getInstance("MD5"));
+        try {
+            int read = stream.read(buffers.arrayBuffer);
+            while(read >= 1)
+                read = stream.read(buffers.arrayBuffer);
+        }
+        finally {
+            stream.close();
+        }
+        return stream.getMessageDigest().digest();
+    }
+
+    @Benchmark
+    public byte[] heapChannel(final Buffers buffers) throws IOException, NoSuchAlgorithmException {
+        return digestChannel(buffers.heapBuffer);
+    }
+
+    @Benchmark
+    public byte[] directChannel(final Buffers buffers) throws IOException, NoSuchAlgorithmException {
+        return digestChannel(buffers.directBuffer);
+    }
+
+    @Benchmark
+    public byte[] mapped() throws IOException, NoSuchAlgorithmException {
+        final MessageDigest digest = MessageDigest.getInstance("MD5");
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            long position = 0L;
+            final long size = channel.size();
+            while(position < size) {
+                final long length = Math.min(size - position, MAP_SIZE);
+                final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                digest.update(mapped);
+                position += length;
+            }
+        }
+        finally {
+            randomAccessFile.close();
+        }
+        return digest.digest();
+    }
+
+    private byte[] digestChannel(final ByteBuffer buffer) throws IOException, NoSuchAlgorithmException {
+        final MessageDigest digest = MessageDigest.getInstance("MD5");
+        final FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            buffer.clear();
+            while(channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        finally {
+            channel.close();
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,284 @@
+package net.minecraft.bootstrap.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.minecraft.bootstrap.Bootstrap;
+import net.minecraft.bootstrap.BootstrapConstants;
+import net.minecraft.bootstrap.ChunkManifest;
+import net.minecraft.bootstrap.Telemetry;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Times Bootstrap.execute() from construction to the launcher being started, against a local
+// FaultServer playing the mirror. Single shots give the time-to-launch percentiles, the traffic
+// counters the bytes and requests each launch cost.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class StartupBenchmark {
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Traffic {
+        public long bytes;
+        public long requests;
+    }
+
+    private static final int PAYLOAD_LENGTH = 2097152;
+    private static final int CHANGED_LENGTH = 65536;
+    private static final int CHUNK_SIZE = 65536;
+
+    @Param({ "fresh", "notModified", "slowOrigin", "update", "capped", "lossy", "wrongETag", "serverErrors", "corruptChunk", "oversizedChunks", "patch", "wrongPatchSource", "wrongPatchTarget", "wrongPatchLength", "artifacts", "artifactsRollForward" })
+    public String scenario;
+
+    private File workDir;
+    private File launcherJar;
+    private FaultServer server;
+    private FaultServer.Script script;
+    private byte[] installed;
+    private boolean updating;
+    private boolean patching;
+    private Map<String, byte[]> artifacts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = BenchmarkSupport.createWorkDir();
+        launcherJar = new File(workDir, "launcher.jar");
+
+        patching = scenario.equals("patch") || scenario.startsWith("wrongPatch");
+        final byte[] current = BenchmarkSupport.createLauncherJar(PAYLOAD_LENGTH, 1L, patching ? CHANGED_LENGTH : 0);
+        server = new FaultServer(current);
+        installed = current;
+        script = new FaultServer.Script();
+
+        if(patching) {
+            // A routine update: the new build keeps the installed jar's bytes and adds a changed entry after them.
+            updating = true;
+            installed = BenchmarkSupport.createLauncherJar(PAYLOAD_LENGTH, 1L);
+            final String installedMd5 = FaultServer.getMd5(installed);
+            if(scenario.equals("patch"))
+                server.setPatch(installedMd5, FaultServer.createPatch(installed, current));
+            else if(scenario.equals("wrongPatchSource"))
+                server.setPatch(installedMd5, FaultServer.createPatch(BenchmarkSupport.createLauncherJar(PAYLOAD_LENGTH, 3L), current));
+            else if(scenario.equals("wrongPatchTarget"))
+                server.setPatch(installedMd5, FaultServer.createPatch(installed, BenchmarkSupport.createLauncherJar(PAYLOAD_LENGTH, 1L, CHANGED_LENGTH / 2)));
+            else
+                server.setPatch(installedMd5, changeLength(FaultServer.createPatch(installed, current)));
+        }
+        else if(scenario.startsWith("artifacts")) {
+            artifacts = new LinkedHashMap<String, byte[]>();
+            artifacts.put("natives/lwjgl.dll", BenchmarkSupport.randomBytes(524288));
+            artifacts.put("natives/openal.dll", BenchmarkSupport.randomBytes(262144));
+            artifacts.put("config/options.json", BenchmarkSupport.randomBytes(4096));
+            server.setArtifacts(artifacts);
+        }
+        else if(scenario.equals("slowOrigin"))
+            script.latency(500L);
+        else if(!scenario.equals("fresh") && !scenario.equals("notModified")) {
+            updating = true;
+            installed = BenchmarkSupport.createLauncherJar(PAYLOAD_LENGTH, 2L);
+            if(scenario.equals("capped"))
+                script.bandwidth(PAYLOAD_LENGTH);
+            else if(scenario.equals("lossy"))
+                script.disconnects(1, PAYLOAD_LENGTH / 8);
+            else if(scenario.equals("wrongETag"))
+                script.wrongETags(1);
+            else if(scenario.equals("serverErrors"))
+                script.errors(2, 503);
+            else if(scenario.endsWith("Chunks") || scenario.equals("corruptChunk")) {
+                // A manifest with chunks over the cap is refused, so its corrupt body can only be fetched again whole.
+                server.setChunks(scenario.equals("corruptChunk") ? CHUNK_SIZE : ChunkManifest.MAX_CHUNK_SIZE * 2);
+                script.corruptions(1, PAYLOAD_LENGTH / 3);
+            }
+        }
+
+        write(launcherJar, installed);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() throws IOException {
+        // Every launch starts from the same installed launcher, with nothing left over from the last one.
+        new File(workDir, "launcher.jar.new").delete();
+        new File(workDir, "launcher.jar.new.part").delete();
+        new File(workDir, "launcher.jar.new.chunks").delete();
+        new File(workDir, "breaker.properties").delete();
+        // The installed jar is hardlinked into the launcher store, writing over it would change the stored copy too.
+        if(updating) {
+            launcherJar.delete();
+            write(launcherJar, installed);
+        }
+
+        if(artifacts != null) {
+            BenchmarkSupport.deleteRecursively(new File(workDir, "natives"));
+            BenchmarkSupport.deleteRecursively(new File(workDir, "config"));
+            BenchmarkSupport.deleteRecursively(new File(workDir, "artifacts.staging"));
+            new File(workDir, "artifacts.json").delete();
+            if(scenario.equals("artifactsRollForward"))
+                stageInterruptedCommit();
+        }
+
+        server.setScript(script);
+        Telemetry.reset();
+    }
+
+    // What a start that died after committing, but before applying its journal, leaves for the next one to finish.
+    private void stageInterruptedCommit() throws IOException {
+        final File stagingDir = new File(workDir, "artifacts.staging");
+        final Properties journal = new Properties();
+        for(final Map.Entry<String, byte[]> artifact : artifacts.entrySet()) {
+            final File staged = new File(stagingDir, artifact.getKey());
+            staged.getParentFile().mkdirs();
+            write(staged, artifact.getValue());
+            journal.setProperty(artifact.getKey(), new StringBuilder().append("replace ").append(FaultServer.getMd5(artifact.getValue())).toString());
+        }
+
+        final URLConnection connection = new URL(new StringBuilder().append(server.getMirror()).append(BootstrapConstants.MANIFEST_FILE).toString()).openConnection();
+        final InputStream inputStream = connection.getInputStream();
+        final OutputStream outputStream = new FileOutputStream(new File(stagingDir, BootstrapConstants.MANIFEST_FILE));
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while((read = inputStream.read(buffer)) != -1)
+                outputStream.write(buffer, 0, read);
+        }
+        finally {
+            inputStream.close();
+            outputStream.close();
+        }
+
+        final OutputStream journalStream = new FileOutputStream(new File(stagingDir, "commit.properties"));
+        try {
+            journal.store(journalStream, null);
+        }
+        finally {
+            journalStream.close();
+        }
+    }
+
+    // Every update scenario has to end with the served launcher installed, a good patch with it arriving as one.
+    @TearDown(Level.Invocation)
+    public void verify() throws IOException {
+        if(artifacts != null)
+            verifyArtifacts();
+        if(!updating)
+            return;
+
+        final String installedMd5 = FaultServer.getMd5(Files.readAllBytes(launcherJar.toPath()));
+        if(!installedMd5.equals(server.getPayloadMd5()))
+            throw new IllegalStateException(new StringBuilder().append("Scenario ").append(scenario).append(" left ").append(installedMd5).append(" installed instead of ").append(server.getPayloadMd5()).toString());
+        if(scenario.equals("patch") && server.getBytesSent() >= PAYLOAD_LENGTH / 2)
+            throw new IllegalStateException(new StringBuilder().append("Patching sent ").append(server.getBytesSent()).append(" bytes, the full launcher must have been downloaded").toString());
+        if(scenario.equals("corruptChunk") && server.getBytesSent() >= PAYLOAD_LENGTH + PAYLOAD_LENGTH / 4)
+            throw new IllegalStateException(new StringBuilder().append("Repairing sent ").append(server.getBytesSent()).append(" bytes, more than the corrupt chunk must have been fetched again").toString());
+        if(scenario.equals("oversizedChunks") && server.getBytesSent() < PAYLOAD_LENGTH * 2)
+            throw new IllegalStateException(new StringBuilder().append("Scenario ").append(scenario).append(" sent only ").append(server.getBytesSent()).append(" bytes, the oversized chunk manifest must have been used").toString());
+        if(scenario.startsWith("wrongPatch") && server.getBytesSent() < PAYLOAD_LENGTH)
+            throw new IllegalStateException(new StringBuilder().append("Scenario ").append(scenario).append(" sent only ").append(server.getBytesSent()).append(" bytes, the broken patch must have been installed").toString());
+    }
+
+    // Staged, committed and applied: every artifact in place, nothing left staged, and a finished commit not fetched again.
+    private void verifyArtifacts() throws IOException {
+        long total = 0L;
+        for(final Map.Entry<String, byte[]> artifact : artifacts.entrySet()) {
+            final File file = new File(workDir, artifact.getKey());
+            if(!file.isFile() || !FaultServer.getMd5(Files.readAllBytes(file.toPath())).equals(FaultServer.getMd5(artifact.getValue())))
+                throw new IllegalStateException(new StringBuilder().append("Scenario ").append(scenario).append(" didn't install ").append(artifact.getKey()).toString());
+            total += artifact.getValue().length;
+        }
+        if(new File(workDir, "artifacts.staging").exists() || !new File(workDir, "artifacts.json").isFile())
+            throw new IllegalStateException(new StringBuilder().append("Scenario ").append(scenario).append(" left the artifact commit unfinished").toString());
+        if(scenario.equals("artifactsRollForward") && server.getBytesSent() >= total)
+            throw new IllegalStateException(new StringBuilder().append("Rolling forward sent ").append(server.getBytesSent()).append(" bytes, the staged artifacts must have been fetched again").toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+        BenchmarkSupport.restoreStdout();
+        BenchmarkSupport.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public Bootstrap launch(final Traffic traffic) {
+        final Bootstrap bootstrap = BenchmarkSupport.createBootstrap(workDir, Proxy.NO_PROXY, true);
+        bootstrap.setMirrors(Collections.singletonList(server.getMirror()));
+        bootstrap.setArtifactsEnabled(artifacts != null);
+        bootstrap.setCheckInterval(scenario.equals("fresh") ? 600000L : 0L);
+        // Wait for the update to land instead of handing it to the background, so its cost is counted.
+        bootstrap.setUpdateDeadline(System.currentTimeMillis() + 60000L);
+        bootstrap.execute(false);
+
+        traffic.bytes += server.getBytesSent();
+        traffic.requests += server.getRequests();
+        return bootstrap;
+    }
+
+    // The announced target length is the last header field, after the magic, the version and both MD5s.
+    private static byte[] changeLength(final byte[] patch) throws IOException {
+        final InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(patch));
+        final ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[65536];
+            int read;
+            while((read = inputStream.read(buffer)) != -1)
+                inflated.write(buffer, 0, read);
+        }
+        finally {
+            inputStream.close();
+        }
+
+        final byte[] bytes = inflated.toByteArray();
+        bytes[47]++;
+        final ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        final OutputStream outputStream = new GZIPOutputStream(deflated);
+        try {
+            outputStream.write(bytes);
+        }
+        finally {
+            outputStream.close();
+        }
+        return deflated.toByteArray();
+    }
+
+    private static void write(final File file, final byte[] bytes) throws IOException {
+        final OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(bytes);
+        }
+        finally {
+            outputStream.close();
+        }
+    }
+}
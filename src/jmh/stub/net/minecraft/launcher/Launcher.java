@@ -0,0 +1,13 @@
+package net.minecraft.launcher;
+
+import java.io.File;
+import java.net.PasswordAuthentication;
+import java.net.Proxy;
+
+import javax.swing.JFrame;
+
+// Stands in for the real launcher in the startup benchmarks, starting it is all that gets measured.
+public class Launcher {
+    public Launcher(final JFrame frame, final File workDir, final Proxy proxy, final PasswordAuthentication proxyAuth, final String[] args, final Integer bootstrapVersion) {
+    }
+}
@@ -0,0 +1,95 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+public class AppCds {
+    public static final String CHILD_PROPERTY = "minecraft.bootstrap.appcds";
+
+    private static final String ARCHIVE_FILE = "launcher.jsa";
+
+    public static boolean isSupported() {
+        final String version = System.getProperty("java.specification.version", "1.8");
+        if(version.startsWith("1."))
+            return false;
+
+        try {
+            return Integer.parseInt(version) >= 13;
+        }
+        catch(final NumberFormatException ignored) {
+            return false;
+        }
+    }
+
+    public static boolean isChild() {
+        return System.getProperty(CHILD_PROPERTY) != null;
+    }
+
+    private static String getStamp(final File launcherJar) {
+        return new StringBuilder().append(launcherJar.length()).append(':').append(launcherJar.lastModified()).append(':').append(System.getProperty("java.vm.version")).toString();
+    }
+
+    public static int relaunch(final File workDir, final String[] args) throws IOException, InterruptedException {
+        final File archive = new File(workDir, ARCHIVE_FILE);
+        final File stampFile = new File(workDir, ARCHIVE_FILE + ".properties");
+        final File launcherJar = new File(workDir, "launcher.jar");
+
+        final Properties stamp = new Properties();
+        if(stampFile.isFile()) {
+            final InputStream inputStream = new FileInputStream(stampFile);
+            try {
+                stamp.load(inputStream);
+            }
+            finally {
+                inputStream.close();
+            }
+        }
+
+        final String launcherStamp = getStamp(launcherJar);
+        final boolean reuse = archive.isFile() && launcherStamp.equals(stamp.getProperty("launcher"));
+
+        final List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+        // The child gets the heap, agents and properties this JVM was started with, but its own archive flags.
+        for(final String argument : ManagementFactory.getRuntimeMXBean().getInputArguments())
+            if(!argument.startsWith("-XX:SharedArchiveFile=") && !argument.startsWith("-XX:ArchiveClassesAtExit=") && !argument.startsWith("-Xshare:"))
+                command.add(argument);
+        if(reuse)
+            command.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        else {
+            archive.setWritable(true);
+            archive.delete();
+            command.add("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath());
+        }
+        command.add("-D" + CHILD_PROPERTY + "=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Bootstrap.class.getName());
+        command.addAll(Arrays.asList(args));
+
+        final int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+
+        // The child may have installed an update before starting the launcher, the archive holds that one's classes.
+        if(!reuse && archive.isFile()) {
+            stamp.setProperty("launcher", getStamp(launcherJar));
+            final OutputStream outputStream = new FileOutputStream(stampFile);
+            try {
+                stamp.store(outputStream, "Launcher the CDS archive was dumped for");
+            }
+            finally {
+                outputStream.close();
+            }
+        }
+
+        return exitCode;
+    }
+}
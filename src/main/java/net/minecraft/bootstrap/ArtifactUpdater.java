@@ -0,0 +1,398 @@
+package net.minecraft.bootstrap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+public class ArtifactUpdater implements Runnable {
+    private static final int MAX_WORKERS = 4;
+    private static final int MAX_PER_HOST = 2;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final String STATE_FILE = "artifacts.json";
+    private static final String STAGING_DIR = "artifacts.staging";
+    private static final String STAGED_MANIFEST = "manifest.json";
+    private static final String JOURNAL_FILE = "commit.properties";
+
+    private static final String REPLACE = "replace";
+    private static final String DELETE = "delete";
+
+    private final Bootstrap bootstrap;
+    private final Proxy proxy;
+    private final File root;
+    private final File stateFile;
+    private final File stagingDir;
+    private final File journalFile;
+    private final Map<String, Semaphore> hostLimits = new ConcurrentHashMap<String, Semaphore>();
+    private final Progress progress = new Progress();
+
+    private Throttle throttle;
+
+    public ArtifactUpdater(final Bootstrap bootstrap, final Proxy proxy, final File root) {
+        this.bootstrap = bootstrap;
+        this.proxy = proxy;
+        this.root = root;
+        progress.addListener(bootstrap.getProgressLog());
+        stateFile = new File(root, STATE_FILE);
+        stagingDir = new File(root, STAGING_DIR);
+        journalFile = new File(stagingDir, JOURNAL_FILE);
+    }
+
+    public void run() {
+        final Telemetry.Span span = Telemetry.start("artifacts");
+        throttle = bootstrap.createThrottle();
+        try {
+            recover();
+
+            final byte[] manifestBytes = fetchManifest();
+            if(manifestBytes == null)
+                return;
+
+            final Manifest manifest = parse(manifestBytes);
+            final List<Manifest.Artifact> changed = new ArrayList<Manifest.Artifact>();
+            final Set<String> paths = new HashSet<String>();
+            for(final Manifest.Artifact artifact : manifest.getArtifacts()) {
+                final File file = resolve(artifact.getPath());
+                paths.add(artifact.getPath());
+                if(!file.isFile() || file.length() != artifact.getSize() || !artifact.getHash().equalsIgnoreCase(bootstrap.getMd5(file)))
+                    changed.add(artifact);
+            }
+
+            final List<String> removed = new ArrayList<String>();
+            if(stateFile.isFile())
+                for(final Manifest.Artifact artifact : parse(readFully(stateFile)).getArtifacts())
+                    if(!paths.contains(artifact.getPath()) && resolve(artifact.getPath()).exists())
+                        removed.add(artifact.getPath());
+
+            span.set("artifacts", Integer.valueOf(paths.size())).set("changed", Integer.valueOf(changed.size())).set("removed", Integer.valueOf(removed.size()));
+            if(changed.isEmpty() && removed.isEmpty()) {
+                bootstrap.println("Artifacts are up to date.");
+                if(!stateFile.isFile())
+                    write(manifestBytes, stateFile);
+                return;
+            }
+
+            bootstrap.println(new StringBuilder().append("Updating ").append(changed.size()).append(" artifact(s), removing ").append(removed.size()).toString());
+            deleteRecursively(stagingDir);
+            if(!changed.isEmpty())
+                download(changed);
+            commit(manifestBytes, changed, removed);
+        }
+        catch(final Exception e) {
+            span.set("error", e.toString());
+            bootstrap.println(new StringBuilder().append("Unable to update artifacts: ").append(e).toString());
+            if(!journalFile.isFile())
+                deleteRecursively(stagingDir);
+        }
+        finally {
+            throttle.close();
+            span.end();
+        }
+    }
+
+    private byte[] fetchManifest() {
+        for(final String mirror : bootstrap.getMirrors().getOrdered()) {
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) Mirrors.resolve(mirror, BootstrapConstants.MANIFEST_FILE).openConnection(proxy);
+                connection.setUseCaches(false);
+                connection.setConnectTimeout(10000);
+                connection.setReadTimeout(10000);
+
+                final int code = connection.getResponseCode();
+                if(code == HttpURLConnection.HTTP_OK)
+                    return readFully(connection.getInputStream());
+                if(code / 100 == 4) {
+                    bootstrap.println(new StringBuilder().append("No artifact manifest on ").append(mirror).append(" (HTTP ").append(code).append(")").toString());
+                    return null;
+                }
+                connection.disconnect();
+            }
+            catch(final IOException e) {
+                bootstrap.println(new StringBuilder().append("Unable to fetch artifact manifest from ").append(mirror).append(": ").append(e).toString());
+                if(connection != null)
+                    connection.disconnect();
+            }
+        }
+        return null;
+    }
+
+    private Manifest parse(final byte[] bytes) throws IOException {
+        try {
+            final Manifest manifest = new Gson().fromJson(new InputStreamReader(new ByteArrayInputStream(bytes), "UTF-8"), Manifest.class);
+            if(manifest == null)
+                throw new IOException("Empty artifact manifest");
+
+            for(final Manifest.Artifact artifact : manifest.getArtifacts())
+                if(artifact.getPath() == null || artifact.getHash() == null || artifact.getSize() < 0L)
+                    throw new IOException(new StringBuilder().append("Incomplete artifact entry ").append(artifact.getPath()).toString());
+            return manifest;
+        }
+        catch(final JsonParseException e) {
+            throw new IOException("Malformed artifact manifest", e);
+        }
+    }
+
+    private File resolve(final String path) throws IOException {
+        final File file = new File(root, path);
+        if(new File(path).isAbsolute() || !file.getCanonicalPath().startsWith(root.getCanonicalPath() + File.separator))
+            throw new IOException(new StringBuilder().append("Artifact path escapes the work dir: ").append(path).toString());
+        return file;
+    }
+
+    private void download(final List<Manifest.Artifact> artifacts) throws IOException {
+        final String mirror = bootstrap.getMirrors().getOrdered().get(0);
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.min(MAX_WORKERS, artifacts.size()), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable);
+                thread.setName(new StringBuilder().append("Artifact downloader #").append(count.incrementAndGet()).toString());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        long total = 0L;
+        for(final Manifest.Artifact artifact : artifacts)
+            total += artifact.getSize();
+        progress.start(0L, total);
+
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for(final Manifest.Artifact artifact : artifacts)
+                futures.add(pool.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        fetch(artifact, artifact.getUrl() == null ? Mirrors.resolve(mirror, artifact.getPath()) : new URL(new URL(mirror), artifact.getUrl()));
+                        return null;
+                    }
+                }));
+
+            for(final Future<Void> future : futures)
+                future.get();
+            progress.finish();
+        }
+        catch(final ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading artifacts");
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Semaphore getHostLimit(final URL url) {
+        final String host = new StringBuilder().append(url.getHost()).append(':').append(url.getPort()).toString();
+        Semaphore limit = hostLimits.get(host);
+        if(limit == null) {
+            hostLimits.putIfAbsent(host, new Semaphore(MAX_PER_HOST));
+            limit = hostLimits.get(host);
+        }
+        return limit;
+    }
+
+    private void fetch(final Manifest.Artifact artifact, final URL url) throws Exception {
+        final File staged = new File(stagingDir, artifact.getPath());
+        if(!staged.getParentFile().isDirectory() && !staged.getParentFile().mkdirs())
+            throw new IOException(new StringBuilder().append("Unable to create ").append(staged.getParentFile().getAbsolutePath()).toString());
+
+        final RetryPolicy retryPolicy = new BackoffRetryPolicy(MAX_ATTEMPTS, Long.MAX_VALUE);
+        final Semaphore limit = getHostLimit(url);
+        int attempt = 0;
+        while(true) {
+            attempt++;
+            final IOException failure;
+            limit.acquire();
+            try {
+                fetchOnce(artifact, url, staged);
+                return;
+            }
+            catch(final IOException e) {
+                staged.delete();
+                failure = e;
+            }
+            finally {
+                limit.release();
+            }
+
+            // Back off without the host permit, so other artifacts from the same host keep downloading meanwhile.
+            final long delay = retryPolicy.getDelay(attempt, 0L);
+            if(delay < 0L)
+                throw new IOException(new StringBuilder().append(artifact.getPath()).append(": ").append(failure.getMessage()).toString(), failure);
+            bootstrap.println(new StringBuilder().append("Retrying ").append(artifact.getPath()).append(" in ").append(delay).append("ms: ").append(failure).toString());
+            Thread.sleep(delay);
+        }
+    }
+
+    private void fetchOnce(final Manifest.Artifact artifact, final URL url, final File staged) throws Exception {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection(proxy);
+        connection.setUseCaches(false);
+        connection.setConnectTimeout(10000);
+        connection.setReadTimeout(10000);
+        if(connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException(new StringBuilder().append("HTTP ").append(connection.getResponseCode()).toString());
+        }
+
+        final MessageDigest digest = MessageDigest.getInstance("MD5");
+        // Artifacts share the work dir's bandwidth limit with the launcher instead of adding to it.
+        final InputStream inputStream = new ThrottledInputStream(connection.getInputStream(), throttle, progress);
+        final OutputStream outputStream = new FileOutputStream(staged);
+        long bytesRead = 0L;
+        try {
+            final byte[] buffer = new byte[65536];
+            int read = inputStream.read(buffer);
+            while(read >= 1) {
+                bytesRead += read;
+                if(bytesRead > artifact.getSize())
+                    throw new IOException(new StringBuilder().append("More than ").append(artifact.getSize()).append(" bytes").toString());
+                digest.update(buffer, 0, read);
+                outputStream.write(buffer, 0, read);
+                read = inputStream.read(buffer);
+            }
+        }
+        finally {
+            inputStream.close();
+            outputStream.close();
+        }
+
+        final String md5 = String.format("%1$032x", new Object[] { new BigInteger(1, digest.digest()) });
+        if(bytesRead != artifact.getSize() || !md5.equalsIgnoreCase(artifact.getHash()))
+            throw new IOException(new StringBuilder().append("Got ").append(bytesRead).append(" bytes with MD5 ").append(md5).append(", expected ").append(artifact.getSize()).append(" bytes with MD5 ").append(artifact.getHash()).toString());
+    }
+
+    private void commit(final byte[] manifestBytes, final List<Manifest.Artifact> changed, final List<String> removed) throws IOException {
+        write(manifestBytes, new File(stagingDir, STAGED_MANIFEST));
+
+        final Properties journal = new Properties();
+        for(final Manifest.Artifact artifact : changed)
+            journal.setProperty(artifact.getPath(), new StringBuilder().append(REPLACE).append(' ').append(artifact.getHash().toLowerCase()).toString());
+        for(final String path : removed)
+            journal.setProperty(path, DELETE);
+
+        // Once the journal is in place the new set is committed; an interrupted apply is finished on the next start.
+        final ByteArrayOutputStream journalBytes = new ByteArrayOutputStream();
+        journal.store(journalBytes, "Staged artifact changes, applied by renaming");
+        write(journalBytes.toByteArray(), journalFile);
+
+        apply(journal);
+    }
+
+    private void recover() throws IOException {
+        if(journalFile.isFile()) {
+            bootstrap.println("Finishing an interrupted artifact update");
+            final Properties journal = new Properties();
+            final InputStream inputStream = new FileInputStream(journalFile);
+            try {
+                journal.load(inputStream);
+            }
+            finally {
+                inputStream.close();
+            }
+            apply(journal);
+        }
+        else
+            deleteRecursively(stagingDir);
+    }
+
+    private void apply(final Properties journal) throws IOException {
+        for(final String path : journal.stringPropertyNames()) {
+            final String[] operation = journal.getProperty(path).split(" ", 2);
+            final File target = resolve(path);
+            if(DELETE.equals(operation[0])) {
+                target.delete();
+                continue;
+            }
+
+            final File staged = new File(stagingDir, path);
+            if(!staged.isFile())
+                continue;
+
+            if(!target.getParentFile().isDirectory() && !target.getParentFile().mkdirs())
+                throw new IOException(new StringBuilder().append("Unable to create ").append(target.getParentFile().getAbsolutePath()).toString());
+            Bootstrap.moveFile(staged, target);
+            if(operation.length > 1)
+                bootstrap.cacheMd5(target, operation[1]);
+        }
+
+        final File stagedManifest = new File(stagingDir, STAGED_MANIFEST);
+        if(stagedManifest.isFile())
+            Bootstrap.moveFile(stagedManifest, stateFile);
+
+        journalFile.delete();
+        deleteRecursively(stagingDir);
+        bootstrap.println("Artifacts committed.");
+    }
+
+    private static void write(final byte[] bytes, final File file) throws IOException {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        final OutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            outputStream.write(bytes);
+        }
+        finally {
+            outputStream.close();
+        }
+        Bootstrap.moveFile(tempFile, file);
+    }
+
+    private static byte[] readFully(final File file) throws IOException {
+        return readFully(new FileInputStream(file));
+    }
+
+    private static byte[] readFully(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[8192];
+            int read = inputStream.read(buffer);
+            while(read >= 1) {
+                outputStream.write(buffer, 0, read);
+                read = inputStream.read(buffer);
+            }
+        }
+        finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void deleteRecursively(final File file) {
+        final File[] children = file.listFiles();
+        if(children != null)
+            for(final File child : children)
+                deleteRecursively(child);
+        file.delete();
+    }
+}
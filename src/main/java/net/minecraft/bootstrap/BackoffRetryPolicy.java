@@ -0,0 +1,33 @@
+package net.minecraft.bootstrap;
+
+import java.util.Random;
+
+public class BackoffRetryPolicy implements RetryPolicy {
+    private static final long BASE_DELAY = 250L;
+    private static final long MAX_DELAY = 10000L;
+
+    private final int maxAttempts;
+    private final long deadline;
+    private final Random random = new Random();
+
+    private long previousDelay = BASE_DELAY;
+
+    public BackoffRetryPolicy(final int maxAttempts, final long deadline) {
+        this.maxAttempts = maxAttempts;
+        this.deadline = deadline;
+    }
+
+    public synchronized long getDelay(final int attempt, final long minimumDelay) {
+        if(attempt >= maxAttempts)
+            return -1L;
+
+        // Decorrelated jitter: each delay is drawn between the base and three times the previous one.
+        final long upper = Math.max(BASE_DELAY + 1L, Math.min(MAX_DELAY, previousDelay * 3L));
+        final long delay = Math.max(minimumDelay, BASE_DELAY + (long) (random.nextDouble() * (upper - BASE_DELAY)));
+        if(System.currentTimeMillis() + delay > deadline)
+            return -1L;
+
+        previousDelay = delay;
+        return delay;
+    }
+}
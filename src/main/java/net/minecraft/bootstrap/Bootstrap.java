@@ -1,49 +1,75 @@
 package net.minecraft.bootstrap;
 
-import java.awt.Font;
-import java.io.BufferedReader;
+import java.awt.GraphicsEnvironment;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Constructor;
 import java.math.BigInteger;
 import java.net.Authenticator;
-import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.PasswordAuthentication;
 import java.net.Proxy;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 import javax.swing.JFrame;
-import javax.swing.JScrollBar;
-import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
 import javax.swing.SwingUtilities;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.DefaultCaret;
-import javax.swing.text.Document;
 
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 
-public class Bootstrap extends JFrame {
-    private static final Font MONOSPACED = new Font("Monospaced", 0, 12);
+public class Bootstrap {
+    private static final String LOG_FILE = "bootstrap.log";
+    private static final String MIRRORS_FILE = "mirrors.properties";
+    private static final long MIRROR_PROBE_TIMEOUT = 5000L;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final int BACKGROUND_MAX_ATTEMPTS = 20;
+    private static final long UPDATE_RETRY_BUDGET = 30000L;
+    private static final long FORCED_RETRY_BUDGET = 120000L;
+    private static final long BACKGROUND_RETRY_BUDGET = 600000L;
+
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, new StringBuilder().append("Bootstrap worker #").append(count.incrementAndGet()).toString());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public static ExecutorService getWorkers() {
+        return WORKERS;
+    }
 
     public static void closeSilently(final Closeable closeable) {
         if(closeable != null)
@@ -55,34 +81,84 @@ public class Bootstrap extends JFrame {
     }
 
     public static void copyFile(final File source, final File target) throws IOException {
-        if(!target.exists())
-            target.createNewFile();
-
-        FileChannel sourceChannel = null;
-        FileChannel targetChannel = null;
+        final FileChannel sourceChannel = new FileInputStream(source).getChannel();
         try {
-            sourceChannel = new FileInputStream(source).getChannel();
-            targetChannel = new FileOutputStream(target).getChannel();
-            targetChannel.transferFrom(sourceChannel, 0L, sourceChannel.size());
+            final FileChannel targetChannel = new FileOutputStream(target).getChannel();
+            try {
+                final long size = sourceChannel.size();
+                long position = 0L;
+                while(position < size) {
+                    final long transferred = sourceChannel.transferTo(position, size - position, targetChannel);
+                    if(transferred <= 0L)
+                        throw new EOFException(new StringBuilder().append(source.getAbsolutePath()).append(" shrank to ").append(position).append(" bytes while copying").toString());
+                    position += transferred;
+                }
+                targetChannel.force(true);
+            }
+            finally {
+                targetChannel.close();
+            }
         }
         finally {
-            if(sourceChannel != null)
-                sourceChannel.close();
+            sourceChannel.close();
+        }
+    }
 
-            if(targetChannel != null)
-                targetChannel.close();
+    public static void moveFile(final File source, final File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        catch(final IOException ignored) {
         }
+
+        // Another filesystem: copy next to the target and fsync it, so the final rename is still atomic.
+        final File tempFile = new File(target.getPath() + ".tmp");
+        try {
+            copyFile(source, tempFile);
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            tempFile.delete();
+        }
+        source.delete();
     }
 
     public static void main(final String[] args) throws IOException {
+        Telemetry.recordJvmStart();
+        if(Daemon.handOff(args))
+            return;
+
+        run(args);
+    }
+
+    public static boolean run(final String[] args) throws IOException {
         System.setProperty("java.net.preferIPv4Stack", "true");
 
+        final Telemetry.Span optionsSpan = Telemetry.start("options");
         final OptionParser optionParser = new OptionParser();
         optionParser.allowsUnrecognizedOptions();
 
         optionParser.accepts("help", "Show help").forHelp();
         optionParser.accepts("force", "Force updating");
-
+        optionParser.accepts("noLzma", "Download the uncompressed launcher");
+        optionParser.accepts("artifacts", "Also update the artifacts listed in the mirror's " + BootstrapConstants.MANIFEST_FILE);
+        optionParser.accepts("headless", "Log to the console and " + LOG_FILE + " without opening a window");
+        optionParser.accepts("appCds", "Run in a child JVM that dumps and reuses a class data sharing archive");
+        optionParser.accepts("daemon", "Stay resident with the launcher loaded, later invocations for this work dir start in this JVM");
+        optionParser.accepts("noDaemon", "Don't hand over to a running daemon");
+        final OptionSpec<Long> daemonIdleOption = optionParser.accepts("daemonIdle", "Seconds without launches before the daemon exits, 0 to stay forever").withRequiredArg().ofType(Long.class).defaultsTo(Long.valueOf(1800L), new Long[0]);
+        optionParser.accepts("rollback", "Switch back to the previously used launcher and pin it");
+        optionParser.accepts("unpin", "Resume updating a pinned launcher");
+        final OptionSpec<String> pinOption = optionParser.accepts("pin", "Switch to a stored launcher by MD5 (or unique prefix) and stop updating").withRequiredArg();
+        optionParser.accepts("strictHash", "Re-verify cached launcher hashes after starting");
+        optionParser.accepts("timings", "Print a summary of startup timings at exit");
+        final OptionSpec<Long> updateDeadlineOption = optionParser.accepts("updateDeadline", "Milliseconds after process start to wait for an update").withRequiredArg().ofType(Long.class).defaultsTo(Long.valueOf(3000L), new Long[0]);
+        final OptionSpec<Long> checkIntervalOption = optionParser.accepts("checkInterval", "Seconds an update check that found no update stays fresh, 0 to check on every start").withRequiredArg().ofType(Long.class).defaultsTo(Long.valueOf(600L), new Long[0]);
+        final OptionSpec<Long> rateLimitOption = optionParser.accepts("rateLimit", "Kilobytes per second shared by all bootstraps using this work dir, 0 for unlimited").withRequiredArg().ofType(Long.class).defaultsTo(Long.valueOf(0L), new Long[0]);
+        final OptionSpec<Long> backgroundRateOption = optionParser.accepts("backgroundRate", "Kilobytes per second for updates still downloading once the launcher started, 0 for unlimited").withRequiredArg().ofType(Long.class).defaultsTo(Long.valueOf(256L), new Long[0]);
+
+        final OptionSpec<String> mirrorOption = optionParser.accepts("mirror", "Base URL of a launcher mirror, may be repeated").withRequiredArg().defaultsTo(BootstrapConstants.DEFAULT_MIRROR, new String[0]);
         final OptionSpec<String> proxyHostOption = optionParser.accepts("proxyHost", "Optional").withRequiredArg();
         final OptionSpec<Integer> proxyPortOption = optionParser.accepts("proxyPort", "Optional").withRequiredArg().defaultsTo("8080", new String[0]).ofType(Integer.class);
         final OptionSpec<String> proxyUserOption = optionParser.accepts("proxyUser", "Optional").withRequiredArg();
@@ -96,12 +172,12 @@ public class Bootstrap extends JFrame {
         catch(final OptionException e) {
             optionParser.printHelpOn(System.out);
             System.out.println("(to pass in arguments to minecraft directly use: '--' followed by your arguments");
-            return;
+            return false;
         }
 
         if(optionSet.has("help")) {
             optionParser.printHelpOn(System.out);
-            return;
+            return true;
         }
 
         final String hostName = optionSet.valueOf(proxyHostOption);
@@ -134,24 +210,90 @@ public class Bootstrap extends JFrame {
         if(!workingDirectory.exists() && !workingDirectory.mkdirs())
             throw new FatalBootstrapError(new StringBuilder().append("Unable to create directory: ").append(workingDirectory).toString());
 
+        if(optionSet.has("appCds") && AppCds.isSupported() && !AppCds.isChild() && !Daemon.isResident() && !optionSet.has("daemon"))
+            try {
+                System.exit(AppCds.relaunch(workingDirectory, args));
+            }
+            catch(final Exception e) {
+                System.out.println(new StringBuilder().append("Unable to relaunch with class data sharing, continuing without: ").append(e).toString());
+            }
+
         final List<String> strings = optionSet.valuesOf(nonOptions);
         final String[] remainderArgs = strings.toArray(new String[strings.size()]);
 
         final boolean force = optionSet.has("force");
 
-        final Bootstrap frame = new Bootstrap(workingDirectory, proxy, passwordAuthentication, remainderArgs);
+        final boolean headless = optionSet.has("headless") || optionSet.has("daemon") || GraphicsEnvironment.isHeadless();
+        optionsSpan.end();
+
+        // A resident JVM started long ago, so launches it serves measure the deadline from the request.
+        final long startTime = Daemon.isResident() ? System.currentTimeMillis() : ManagementFactory.getRuntimeMXBean().getStartTime();
+
+        if(optionSet.has("timings") && !Daemon.isResident())
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    System.out.print(Telemetry.getSummary());
+                }
+            }));
+
+        final Bootstrap bootstrap = new Bootstrap(workingDirectory, proxy, passwordAuthentication, remainderArgs, headless);
+        bootstrap.setLzmaEnabled(!optionSet.has("noLzma"));
+        bootstrap.setArtifactsEnabled(optionSet.has("artifacts"));
+        bootstrap.setMirrors(optionSet.valuesOf(mirrorOption));
+        bootstrap.setStrictHash(optionSet.has("strictHash"));
+        bootstrap.setUpdateDeadline(startTime + optionSet.valueOf(updateDeadlineOption).longValue());
+        bootstrap.setCheckInterval(optionSet.valueOf(checkIntervalOption).longValue() * 1000L);
+        bootstrap.setRateLimit(optionSet.valueOf(rateLimitOption).longValue() * 1024L);
+        bootstrap.setBackgroundRate(optionSet.valueOf(backgroundRateOption).longValue() * 1024L);
         try {
-            frame.execute(force);
+            if(optionSet.has("unpin"))
+                bootstrap.pin(null);
+            if(optionSet.has("rollback"))
+                bootstrap.rollback();
+            else if(optionSet.has(pinOption))
+                bootstrap.pin(optionSet.valueOf(pinOption));
+
+            if(optionSet.has("daemon") && !Daemon.isResident())
+                new Daemon(workingDirectory, optionSet.valueOf(daemonIdleOption).longValue() * 1000L).serve(bootstrap);
+            else
+                bootstrap.execute(force);
+            return true;
         }
         catch(final Throwable t) {
             final ByteArrayOutputStream stracktrace = new ByteArrayOutputStream();
             t.printStackTrace(new PrintStream(stracktrace));
 
             final StringBuilder report = new StringBuilder();
-            report.append(stracktrace).append("\n\n-- Head --\nStacktrace:\n").append(stracktrace).append("\n\n").append(frame.outputBuffer);
+            report.append(stracktrace).append("\n\n-- Head --\nStacktrace:\n").append(stracktrace).append("\n\n").append(bootstrap.logSink.getTail());
             report.append("\tMinecraft.Bootstrap Version: 5");
-            frame.println(new StringBuilder().append("FATAL ERROR: ").append(stracktrace.toString()).toString());
-            frame.println("\nPlease fix the error and restart.");
+            bootstrap.println(new StringBuilder().append("FATAL ERROR: ").append(stracktrace.toString()).toString());
+            bootstrap.println("\nPlease fix the error and restart.");
+            return false;
+        }
+        finally {
+            // Work handed to the background ends its spans after the launcher started, so the run is written once
+            // that's done, or when the JVM exits first.
+            final AtomicBoolean written = new AtomicBoolean();
+            final Runnable writer = new Runnable() {
+                public void run() {
+                    if(!written.compareAndSet(false, true))
+                        return;
+
+                    try {
+                        Telemetry.write(workingDirectory);
+                    }
+                    catch(final IOException e) {
+                        System.out.println(new StringBuilder().append("Unable to write telemetry: ").append(e).toString());
+                    }
+                }
+            };
+            if(!Daemon.isResident())
+                Runtime.getRuntime().addShutdownHook(new Thread(writer));
+            bootstrap.getBackgroundWork().whenComplete(new BiConsumer<Void, Throwable>() {
+                public void accept(final Void ignored, final Throwable failure) {
+                    writer.run();
+                }
+            });
         }
     }
 
@@ -163,41 +305,79 @@ public class Bootstrap extends JFrame {
     private final Proxy proxy;
     private final File launcherJar;
     private final File launcherJarNew;
-    private final JTextArea textArea;
+    private final boolean headless;
+
+    private CompletableFuture<BootstrapFrame> frameReady;
 
-    private final JScrollPane scrollPane;
+    private PrintStream logFile;
 
     private final PasswordAuthentication proxyAuth;
 
     private final String[] remainderArgs;
 
-    private final StringBuilder outputBuffer = new StringBuilder();
+    private final LogSink logSink;
+
+    private final HashCache hashCache;
+
+    private final LauncherStore launcherStore;
+
+    private Mirrors mirrors;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final UpdateCheckCache updateCheckCache;
+
+    private final List<CompletableFuture<?>> backgroundWork = new ArrayList<CompletableFuture<?>>();
+
+    private final ProgressListener progressLog = new ProgressListener() {
+        public void onProgress(final long bytes, final long total, final long bytesPerSecond, final long remainingMillis) {
+            if(total > 0L && bytes >= total)
+                return;
+
+            final StringBuilder builder = new StringBuilder().append("Downloaded ").append(bytes / 1024L).append("kb");
+            if(total > 0L)
+                builder.append(" of ").append(total / 1024L).append("kb (").append(bytes * 100L / total).append("%)");
+            builder.append(" at ").append(bytesPerSecond / 1024L).append("kb/s");
+            if(remainingMillis >= 0L)
+                builder.append(", ").append(remainingMillis / 1000L).append("s left");
+            println(builder.toString());
+        }
+    };
+
+    private boolean lzmaEnabled = true;
+    private boolean artifactsEnabled;
+    private boolean strictHash;
+    private long updateDeadline = System.currentTimeMillis() + 3000L;
+    private long rateLimit;
+    private long backgroundRate = 262144L;
 
     public Bootstrap(final File workDir, final Proxy proxy, final PasswordAuthentication proxyAuth, final String[] remainderArgs) {
-        super(BootstrapConstants.SERVER_NAME);
+        this(workDir, proxy, proxyAuth, remainderArgs, false);
+    }
+
+    public Bootstrap(final File workDir, final Proxy proxy, final PasswordAuthentication proxyAuth, final String[] remainderArgs, final boolean headless) {
         this.workDir = workDir;
+        this.headless = headless;
         this.proxy = proxy;
         this.proxyAuth = proxyAuth;
         this.remainderArgs = remainderArgs;
         launcherJar = new File(workDir, "launcher.jar");
         launcherJarNew = new File(workDir, "launcher.jar.new");
-
-        setSize(854, 480);
-        setDefaultCloseOperation(3);
-
-        textArea = new JTextArea();
-        textArea.setLineWrap(true);
-        textArea.setEditable(false);
-        textArea.setFont(MONOSPACED);
-        ((DefaultCaret) textArea.getCaret()).setUpdatePolicy(1);
-
-        scrollPane = new JScrollPane(textArea);
-        scrollPane.setBorder(null);
-        scrollPane.setVerticalScrollBarPolicy(22);
-
-        add(scrollPane);
-        setLocationRelativeTo(null);
-        setVisible(true);
+        hashCache = new HashCache(new File(workDir, "hashes.properties"));
+        launcherStore = new LauncherStore(new File(workDir, "launchers"));
+        mirrors = new Mirrors(new File(workDir, MIRRORS_FILE), Collections.singletonList(BootstrapConstants.DEFAULT_MIRROR));
+        circuitBreaker = new CircuitBreaker(new File(workDir, "breaker.properties"));
+        updateCheckCache = new UpdateCheckCache(new File(workDir, "updatecheck.properties"));
+        logSink = new LogSink(!headless);
+        if(headless)
+            try {
+                logFile = new PrintStream(new FileOutputStream(new File(workDir, LOG_FILE)), true);
+            }
+            catch(final IOException e) {
+                System.out.println(new StringBuilder().append("Unable to open ").append(LOG_FILE).append(": ").append(e).toString());
+            }
+        else
+            frameReady = createFrame();
 
         println("Bootstrap (v5)");
         println(new StringBuilder().append("Current time is ").append(DateFormat.getDateTimeInstance(2, 2, Locale.US).format(new Date())).toString());
@@ -211,16 +391,57 @@ public class Bootstrap extends JFrame {
     }
 
     public void execute(final boolean force) {
-        if(launcherJarNew.isFile()) {
-            println("Found cached update");
-            renameNew();
+        final String pinned = launcherStore.getPinned();
+        if(pinned != null) {
+            println(new StringBuilder().append("Launcher is pinned to ").append(pinned).append(", not looking for updates (use --unpin to resume).").toString());
+            if(!pinned.equals(getMd5(launcherJar)))
+                activate(pinned);
+
+            startLauncher(launcherJar);
+            return;
+        }
+
+        if(DownloadState.isPartial(launcherJarNew))
+            println("Found partial update, it will be resumed");
+        else if(launcherJarNew.isFile())
+            if(hashCache.get(launcherJarNew) == null) {
+                println("Discarding unverified update");
+                launcherJarNew.delete();
+                ChunkManifest.getFile(launcherJarNew).delete();
+            }
+            else {
+                println("Found cached update");
+                renameNew();
+            }
+
+        final String freshMd5 = force ? null : updateCheckCache.getFreshMd5();
+        if(freshMd5 != null && launcherJar.isFile() && freshMd5.equals(getMd5(launcherJar))) {
+            println(new StringBuilder().append("Last update check is fresh for another ").append(updateCheckCache.getRemaining() / 1000L).append("s, not looking for updates").toString());
+            rememberLauncher();
+            startLauncher(launcherJar);
+            if(strictHash)
+                verifyHashInBackground(launcherJar);
+            return;
         }
 
         final Downloader.Controller controller = new Downloader.Controller();
         final Downloader downloader = new Downloader(controller, this, proxy, null, launcherJarNew);
+        downloader.getProgress().addListener(progressLog);
+        downloader.setRetryPolicy(new BackoffRetryPolicy(MAX_ATTEMPTS, System.currentTimeMillis() + FORCED_RETRY_BUDGET));
 
+        CompletableFuture<Void> artifacts = null;
         if(force || !launcherJar.exists()) {
-            downloader.run();
+            selectMirrors();
+            if(artifactsEnabled)
+                artifacts = CompletableFuture.runAsync(new ArtifactUpdater(this, proxy, workDir), WORKERS);
+            final Throttle throttle = createThrottle();
+            downloader.setThrottle(throttle);
+            try {
+                downloader.run();
+            }
+            finally {
+                throttle.close();
+            }
 
             if(controller.hasDownloadedLatch.getCount() != 0L)
                 throw new FatalBootstrapError("Unable to download while being forced");
@@ -228,50 +449,316 @@ public class Bootstrap extends JFrame {
             renameNew();
         }
         else {
-            final String md5 = getMd5(launcherJar);
-            String md5File = BootstrapConstants.MD5_FILE;
+            final CompletableFuture<String> localMd5 = CompletableFuture.supplyAsync(new Supplier<String>() {
+                public String get() {
+                    return getMd5(launcherJar);
+                }
+            }, WORKERS);
+            final CompletableFuture<List<String>> mirrorsReady = CompletableFuture.supplyAsync(new Supplier<List<String>>() {
+                public List<String> get() {
+                    return selectMirrors();
+                }
+            }, WORKERS);
+            if(artifactsEnabled)
+                artifacts = mirrorsReady.thenRunAsync(new ArtifactUpdater(this, proxy, workDir), WORKERS);
+            // Set before the check starts, a handoff to the background may replace it before the updater exists.
+            controller.setRetryPolicy(new BackoffRetryPolicy(MAX_ATTEMPTS, updateDeadline + UPDATE_RETRY_BUDGET));
+            // Its own throttle, so handing the update to the background doesn't slow the artifacts down with it.
+            final Throttle updateThrottle = createThrottle();
+            final CompletableFuture<Void> checked = localMd5.thenAcceptBoth(mirrorsReady, new BiConsumer<String, List<String>>() {
+                public void accept(final String md5, final List<String> ordered) {
+                    println("Looking for update");
+                    final Downloader updater = new Downloader(controller, Bootstrap.this, proxy, md5, launcherJar, launcherJarNew);
+                    updater.setThrottle(updateThrottle);
+                    updater.getProgress().addListener(progressLog);
+                    controller.register(Thread.currentThread());
+                    try {
+                        updater.run();
+                    }
+                    finally {
+                        controller.unregister(Thread.currentThread());
+                    }
+                }
+            });
 
-            try {
-                final HttpURLConnection connection = downloader.getConnection(new URL(md5File));
-                final BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                md5File = reader.readLine();
-                reader.close();
-                System.out.println(md5);
-                System.out.println(md5File);
-            }
-            catch(final Exception e) {
-                println(new StringBuilder().append("Error: ").append(e.toString()).toString());
-                downloader.suggestHelp(e);
-            }
+            checked.whenComplete(new BiConsumer<Void, Throwable>() {
+                public void accept(final Void ignored, final Throwable failure) {
+                    updateThrottle.close();
+                }
+            });
 
-            if(!md5.equals(md5File)) {
-                final Thread thread = new Thread(new Downloader(controller, this, proxy, md5, launcherJarNew));
-                thread.setName("Launcher downloader");
-                thread.start();
-                try {
-                    println("Looking for update");
-                    final boolean wasInTime = controller.foundUpdateLatch.await(3L, TimeUnit.SECONDS);
+            try {
+                final boolean wasInTime = controller.foundUpdateLatch.await(getRemainingTime(), TimeUnit.MILLISECONDS);
 
-                    if(controller.foundUpdate.get()) {
-                        println("Found update in time, waiting to download");
-                        controller.hasDownloadedLatch.await();
-                        renameNew();
+                if(controller.foundUpdate.get()) {
+                    println("Found update in time, waiting to download");
+                    try {
+                        checked.get(getRemainingTime(), TimeUnit.MILLISECONDS);
                     }
-                    else if(!wasInTime)
-                        println("Didn't find an update in time.");
+                    catch(final TimeoutException e) {
+                        println("Didn't download the update in time.");
+                    }
+                    if(controller.hasDownloadedLatch.getCount() == 0L)
+                        renameNew();
+                    else if(!checked.isDone())
+                        continueInBackground(checked, controller, updateThrottle);
+                    else
+                        println("Unable to download the update, starting the installed launcher.");
                 }
-                catch(final InterruptedException e) {
-                    throw new FatalBootstrapError(new StringBuilder().append("Got interrupted: ").append(e.toString()).toString());
+                else if(!wasInTime) {
+                    println("Didn't find an update in time.");
+                    // Once the latch fired in time the check is over, even if its future hasn't completed yet.
+                    if(!checked.isDone())
+                        continueInBackground(checked, controller, updateThrottle);
                 }
             }
-            else
-                println("Didn't find an update in time.");
+            catch(final ExecutionException e) {
+                throw new FatalBootstrapError(new StringBuilder().append("Unable to check for updates: ").append(e.getCause()).toString());
+            }
+            catch(final InterruptedException e) {
+                throw new FatalBootstrapError(new StringBuilder().append("Got interrupted: ").append(e.toString()).toString());
+            }
         }
 
+        if(artifacts != null)
+            waitForArtifacts(artifacts);
+
+        rememberLauncher();
+
         startLauncher(launcherJar);
+
+        if(strictHash)
+            verifyHashInBackground(launcherJar);
+    }
+
+    private void continueInBackground(final CompletableFuture<Void> checked, final Downloader.Controller controller, final Throttle updateThrottle) {
+        final long rate = backgroundRate > 0L && (rateLimit <= 0L || backgroundRate < rateLimit) ? backgroundRate : rateLimit;
+        println(new StringBuilder().append("Continuing the update in the background").append(rate > 0L ? new StringBuilder().append(" at ").append(rate / 1024L).append("kb/s").toString() : "").append(", it will be installed on next start").toString());
+        updateThrottle.setRate(rate);
+        // Nobody waits on it any more, so it gets a budget of its own instead of what was left of the startup one.
+        controller.setRetryPolicy(new BackoffRetryPolicy(BACKGROUND_MAX_ATTEMPTS, System.currentTimeMillis() + BACKGROUND_RETRY_BUDGET));
+        controller.setPriority(Thread.MIN_PRIORITY);
+
+        addBackgroundWork(checked.thenRun(new Runnable() {
+            public void run() {
+                if(controller.hasDownloadedLatch.getCount() == 0L)
+                    println("Update downloaded and verified, it will be installed on next start.");
+            }
+        }));
+    }
+
+    private synchronized void addBackgroundWork(final CompletableFuture<?> work) {
+        backgroundWork.add(work);
+    }
+
+    // Completes, failed or not, once everything execute() left running after starting the launcher has finished.
+    public synchronized CompletableFuture<Void> getBackgroundWork() {
+        return CompletableFuture.allOf(backgroundWork.toArray(new CompletableFuture<?>[0]));
+    }
+
+    public void pin(final String hash) {
+        try {
+            if(hash == null) {
+                launcherStore.setPinned(null);
+                println("Launcher unpinned.");
+                return;
+            }
+
+            final String md5 = launcherStore.resolve(hash);
+            if(md5 == null)
+                throw new FatalBootstrapError(new StringBuilder().append("No stored launcher matches ").append(hash).toString());
+
+            activate(md5);
+            launcherStore.setPinned(md5);
+        }
+        catch(final IOException e) {
+            throw new FatalBootstrapError(new StringBuilder().append("Unable to pin launcher: ").append(e).toString());
+        }
+    }
+
+    public void rollback() {
+        final String previous = launcherStore.getPrevious();
+        if(previous == null)
+            throw new FatalBootstrapError("No previous launcher to roll back to");
+
+        println(new StringBuilder().append("Rolling back from ").append(launcherStore.getActive()).append(" to ").append(previous).toString());
+        pin(previous);
+    }
+
+    private void activate(final String md5) {
+        // Entries are hardlinks, so anything that rewrote launcher.jar in place also changed the entry it came from.
+        final File entry = launcherStore.getEntry(md5);
+        final String actual = entry.isFile() ? computeMd5(entry) : null;
+        if(actual != null && !actual.equalsIgnoreCase(md5)) {
+            entry.delete();
+            throw new FatalBootstrapError(new StringBuilder().append("Stored launcher ").append(md5).append(" was modified (its MD5 is now ").append(actual).append("), removed it from the store").toString());
+        }
+
+        try {
+            launcherStore.activate(md5, launcherJar);
+            hashCache.put(launcherJar, md5);
+            println(new StringBuilder().append("Activated stored launcher ").append(md5).toString());
+        }
+        catch(final IOException e) {
+            throw new FatalBootstrapError(new StringBuilder().append("Unable to activate launcher ").append(md5).append(": ").append(e).toString());
+        }
+    }
+
+    private void rememberLauncher() {
+        final String md5 = getMd5(launcherJar);
+        if(md5 == null)
+            return;
+
+        try {
+            launcherStore.remember(launcherJar, md5);
+        }
+        catch(final IOException e) {
+            println(new StringBuilder().append("Unable to store launcher ").append(md5).append(": ").append(e).toString());
+        }
+    }
+
+    private long getRemainingTime() {
+        return Math.max(0L, updateDeadline - System.currentTimeMillis());
+    }
+
+    private void waitForArtifacts(final CompletableFuture<Void> artifacts) {
+        try {
+            artifacts.get(getRemainingTime(), TimeUnit.MILLISECONDS);
+        }
+        catch(final TimeoutException e) {
+            println("Artifacts are still updating in the background.");
+            addBackgroundWork(artifacts);
+        }
+        catch(final ExecutionException e) {
+            println(new StringBuilder().append("Unable to update artifacts: ").append(e.getCause()).toString());
+        }
+        catch(final InterruptedException e) {
+            throw new FatalBootstrapError(new StringBuilder().append("Got interrupted: ").append(e.toString()).toString());
+        }
+    }
+
+    private List<String> selectMirrors() {
+        final List<String> ordered = mirrors.race(proxy, WORKERS, MIRROR_PROBE_TIMEOUT);
+        if(ordered.size() > 1)
+            println(new StringBuilder().append("Using mirror ").append(ordered.get(0)).toString());
+        return ordered;
+    }
+
+    private CompletableFuture<BootstrapFrame> createFrame() {
+        final CompletableFuture<BootstrapFrame> future = new CompletableFuture<BootstrapFrame>();
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                final Telemetry.Span span = Telemetry.start("frame");
+                try {
+                    future.complete(new BootstrapFrame(logSink));
+                }
+                catch(final Throwable t) {
+                    future.completeExceptionally(t);
+                }
+                finally {
+                    span.end();
+                }
+            }
+        });
+        return future;
+    }
+
+    public void setUpdateDeadline(final long updateDeadline) {
+        this.updateDeadline = updateDeadline;
+    }
+
+    public void cacheMd5(final File file, final String md5) {
+        hashCache.put(file, md5);
+    }
+
+    public boolean isLzmaEnabled() {
+        return lzmaEnabled;
+    }
+
+    public void setLzmaEnabled(final boolean lzmaEnabled) {
+        this.lzmaEnabled = lzmaEnabled;
+    }
+
+    public void setArtifactsEnabled(final boolean artifactsEnabled) {
+        this.artifactsEnabled = artifactsEnabled;
+    }
+
+    // Downloads draw from the work dir's shared bucket through throttles of their own, closed when they finish.
+    public Throttle createThrottle() {
+        final Throttle throttle = new Throttle(new File(workDir, "bandwidth.lock"));
+        throttle.setRate(rateLimit);
+        return throttle;
+    }
+
+    public ProgressListener getProgressLog() {
+        return progressLog;
+    }
+
+    public UpdateCheckCache getUpdateCheckCache() {
+        return updateCheckCache;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Mirrors getMirrors() {
+        return mirrors;
+    }
+
+    public void setMirrors(final List<String> mirrors) {
+        this.mirrors = new Mirrors(new File(workDir, MIRRORS_FILE), mirrors);
+    }
+
+    public void setCheckInterval(final long checkInterval) {
+        updateCheckCache.setInterval(checkInterval);
+    }
+
+    public void setRateLimit(final long rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public void setBackgroundRate(final long backgroundRate) {
+        this.backgroundRate = backgroundRate;
+    }
+
+    public void setStrictHash(final boolean strictHash) {
+        this.strictHash = strictHash;
     }
 
     public String getMd5(final File file) {
+        final Telemetry.Span span = Telemetry.start("getMd5").set("file", file.getName());
+        try {
+            final String cached = hashCache.get(file);
+            span.set("cached", Boolean.valueOf(cached != null));
+            if(cached != null)
+                return cached;
+
+            final String md5 = hashFile(file);
+            hashCache.put(file, md5);
+            return md5;
+        }
+        finally {
+            span.end();
+        }
+    }
+
+    private String hashFile(final File file) {
+        // A single core gains nothing from splitting the file, and one MD5 pass skips parsing the manifest.
+        final ChunkManifest manifest = Runtime.getRuntime().availableProcessors() > 1 ? ChunkManifest.load(ChunkManifest.getFile(file)) : null;
+        if(manifest != null && manifest.getLength() == file.length())
+            try {
+                final List<Integer> badChunks = ChunkVerifier.verify(file, manifest);
+                if(badChunks != null && badChunks.isEmpty())
+                    return manifest.getMd5().toLowerCase();
+            }
+            catch(final IOException ignored) {
+            }
+
+        return computeMd5(file);
+    }
+
+    public String computeMd5(final File file) {
         DigestInputStream stream = null;
         try {
             stream = new DigestInputStream(new FileInputStream(file), MessageDigest.getInstance("MD5"));
@@ -292,33 +779,33 @@ public class Bootstrap extends JFrame {
         return String.format("%1$032x", new Object[] { new BigInteger(1, stream.getMessageDigest().digest()) });
     }
 
-    private File getUnpackedLzmaFile(final File packedLauncherJar) {
-        String filePath = packedLauncherJar.getAbsolutePath();
-        if(filePath.endsWith(".lzma"))
-            filePath = filePath.substring(0, filePath.length() - 5);
-        return new File(filePath);
+    private void verifyHashInBackground(final File file) {
+        final String cached = hashCache.get(file);
+        if(cached == null)
+            return;
+
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                final String md5 = hashFile(file);
+                if(md5 != null && md5.equals(cached))
+                    return;
+
+                println(new StringBuilder().append("Cached hash of ").append(file.getAbsolutePath()).append(" is stale (").append(cached).append(" != ").append(md5).append("), it will be re-checked on next start").toString());
+                hashCache.remove(file);
+            }
+        });
+        thread.setName("Launcher hash verifier");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
     }
 
     public void print(final String string) {
         System.out.print(string);
+        if(logFile != null)
+            logFile.print(string);
 
-        outputBuffer.append(string);
-
-        final Document document = textArea.getDocument();
-        final JScrollBar scrollBar = scrollPane.getVerticalScrollBar();
-
-        final boolean shouldScroll = scrollBar.getValue() + scrollBar.getSize().getHeight() + MONOSPACED.getSize() * 2 > scrollBar.getMaximum();
-        try {
-            document.insertString(document.getLength(), string, null);
-        }
-        catch(final BadLocationException ignored) {
-        }
-        if(shouldScroll)
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
-                    scrollBar.setValue(2147483647);
-                }
-            });
+        logSink.append(string);
     }
 
     public void println(final String string) {
@@ -330,42 +817,125 @@ public class Bootstrap extends JFrame {
             throw new FatalBootstrapError(new StringBuilder().append("while renaming, target path: ").append(launcherJar.getAbsolutePath()).append(" is not a file and we failed to delete it").toString());
 
         if(launcherJarNew.isFile()) {
-            println(new StringBuilder().append("Renaming ").append(launcherJarNew.getAbsolutePath()).append(" to ").append(launcherJar.getAbsolutePath()).toString());
+            final Telemetry.Span span = Telemetry.start("renameNew");
+            try {
+                println(new StringBuilder().append("Renaming ").append(launcherJarNew.getAbsolutePath()).append(" to ").append(launcherJar.getAbsolutePath()).toString());
+
+                final String md5 = hashCache.get(launcherJarNew);
+                hashCache.remove(launcherJarNew);
 
-            if(launcherJarNew.renameTo(launcherJar))
-                println("Renamed successfully.");
-            else {
                 if(launcherJar.exists() && !launcherJar.canWrite())
                     throw new FatalBootstrapError(new StringBuilder().append("unable to rename: target").append(launcherJar.getAbsolutePath()).append(" not writable").toString());
 
-                println("Unable to rename - could be on another filesystem, trying copy & delete.");
-
-                if(launcherJarNew.exists() && launcherJarNew.isFile())
-                    try {
-                        copyFile(launcherJarNew, launcherJar);
-                        if(launcherJarNew.delete())
-                            println("Copy & delete succeeded.");
-                        else
-                            println(new StringBuilder().append("Unable to remove ").append(launcherJarNew.getAbsolutePath()).append(" after copy.").toString());
-                    }
-                    catch(final IOException e) {
-                        throw new FatalBootstrapError(new StringBuilder().append("unable to copy:").append(e).toString());
-                    }
-                else
-                    println("Nevermind... file vanished?");
+                try {
+                    moveFile(launcherJarNew, launcherJar);
+                    if(ChunkManifest.getFile(launcherJarNew).isFile())
+                        moveFile(ChunkManifest.getFile(launcherJarNew), ChunkManifest.getFile(launcherJar));
+                    else
+                        ChunkManifest.getFile(launcherJar).delete();
+                }
+                catch(final IOException e) {
+                    throw new FatalBootstrapError(new StringBuilder().append("unable to rename: ").append(e).toString());
+                }
+                hashCache.put(launcherJar, md5);
+                println("Renamed successfully.");
+            }
+            finally {
+                span.end();
             }
         }
     }
 
     public void startLauncher(final File launcherJar) {
         println("Starting launcher.");
+        if(frameReady == null)
+            if(GraphicsEnvironment.isHeadless())
+                println("Running without a display, the launcher gets no window.");
+            else
+                frameReady = createFrame();
+
+        JFrame window = null;
+        if(frameReady != null)
+            try {
+                window = frameReady.get();
+            }
+            catch(final Exception e) {
+                throw new FatalBootstrapError(new StringBuilder().append("Unable to create window: ").append(e).toString());
+            }
+
+        final File indexFile = new File(workDir, "launcher.classes");
+        final File hotClasses = new File(workDir, "launcher.classes.hot");
+        final Telemetry.Span classLoadingSpan = Telemetry.start("classLoading");
+        final LauncherClassLoader classLoader = getClassLoader(launcherJar, classLoadingSpan);
         try {
-            final Class aClass = new URLClassLoader(new URL[] { launcherJar.toURI().toURL() }).loadClass("net.minecraft.launcher.Launcher");
+            final Class aClass = classLoader.loadClass("net.minecraft.launcher.Launcher");
             final Constructor constructor = aClass.getConstructor(new Class[] { JFrame.class, File.class, Proxy.class, PasswordAuthentication.class, String[].class, Integer.class });
-            constructor.newInstance(new Object[] { this, workDir, proxy, proxyAuth, remainderArgs, Integer.valueOf(5) });
+            classLoadingSpan.end();
+
+            final Telemetry.Span launcherSpan = Telemetry.start("launcher");
+            constructor.newInstance(new Object[] { window, workDir, proxy, proxyAuth, remainderArgs, Integer.valueOf(5) });
+            launcherSpan.end();
         }
         catch(final Exception e) {
             throw new FatalBootstrapError(new StringBuilder().append("Unable to start: ").append(e).toString());
         }
+
+        try {
+            classLoader.saveHotClasses(hotClasses);
+        }
+        catch(final IOException e) {
+            println(new StringBuilder().append("Unable to record launcher classes: ").append(e).toString());
+        }
+
+        if(!classLoader.isIndexed())
+            indexInBackground(launcherJar, indexFile);
+    }
+
+    private LauncherClassLoader getClassLoader(final File launcherJar, final Telemetry.Span span) {
+        final String md5 = Daemon.isResident() ? getMd5(launcherJar) : null;
+        final LauncherClassLoader retained = Daemon.getClassLoader(launcherJar, md5);
+        span.set("retained", Boolean.valueOf(retained != null));
+        if(retained != null)
+            return retained;
+
+        final LauncherClassLoader classLoader = new LauncherClassLoader(launcherJar, new File(workDir, "launcher.classes"));
+        span.set("indexed", Boolean.valueOf(classLoader.isIndexed()));
+        classLoader.warmUp(new File(workDir, "launcher.classes.hot"));
+        Daemon.retain(launcherJar, md5, classLoader);
+        return classLoader;
+    }
+
+    public void warmUpLauncher() {
+        if(!launcherJar.isFile())
+            return;
+
+        final Telemetry.Span span = Telemetry.start("classLoading");
+        try {
+            getClassLoader(launcherJar, span).loadClass("net.minecraft.launcher.Launcher");
+        }
+        catch(final ClassNotFoundException e) {
+            println(new StringBuilder().append("Unable to preload the launcher: ").append(e).toString());
+        }
+        finally {
+            span.end();
+        }
+    }
+
+    private void indexInBackground(final File launcherJar, final File indexFile) {
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    LauncherClassLoader.buildIndex(launcherJar, indexFile);
+                }
+                catch(final IOException e) {
+                    println(new StringBuilder().append("Unable to index launcher classes: ").append(e).toString());
+                    indexFile.delete();
+                }
+            }
+        });
+        thread.setName("Launcher indexer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
     }
 }
\ No newline at end of file
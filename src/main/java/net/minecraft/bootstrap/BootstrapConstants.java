@@ -1,8 +1,13 @@
 package net.minecraft.bootstrap;
 
 public class BootstrapConstants {
-    public static final String MD5_FILE = "http://dl.rellynn.eu/launcher/md5.txt";
+    public static final String DEFAULT_MIRROR = "http://dl.rellynn.eu/launcher/";
+    public static final String MD5_FILE = "md5.txt";
     public static final String SERVER_NAME = "Minecraft";
     public static final String APPLICATION_NAME = "minecraft";
-    public static final String LAUNCHER_URL = "http://dl.rellynn.eu/launcher/launcher.jar";
+    public static final String LAUNCHER_FILE = "launcher.jar";
+    public static final String LAUNCHER_LZMA_FILE = "launcher.jar.lzma";
+    public static final String CHUNKS_FILE = "launcher.jar.chunks";
+    public static final String PATCH_FILE = "patches/%s.patch";
+    public static final String MANIFEST_FILE = "manifest.json";
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package net.minecraft.bootstrap;
+
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JFrame;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultCaret;
+import javax.swing.text.Document;
+
+public class BootstrapFrame extends JFrame {
+    private static final Font MONOSPACED = new Font("Monospaced", 0, 12);
+    private static final int FLUSH_INTERVAL = 16;
+    private static final int MAX_DOCUMENT_LENGTH = 262144;
+
+    private final JTextArea textArea;
+
+    private final JScrollPane scrollPane;
+
+    private final LogSink logSink;
+
+    private final StringBuilder flushBuffer = new StringBuilder();
+
+    private final Timer flushTimer;
+
+    public BootstrapFrame(final LogSink logSink) {
+        super(BootstrapConstants.SERVER_NAME);
+        this.logSink = logSink;
+
+        setSize(854, 480);
+        setDefaultCloseOperation(3);
+
+        textArea = new JTextArea();
+        textArea.setLineWrap(true);
+        textArea.setEditable(false);
+        textArea.setFont(MONOSPACED);
+        ((DefaultCaret) textArea.getCaret()).setUpdatePolicy(1);
+
+        scrollPane = new JScrollPane(textArea);
+        scrollPane.setBorder(null);
+        scrollPane.setVerticalScrollBarPolicy(22);
+
+        add(scrollPane);
+        setLocationRelativeTo(null);
+        setVisible(true);
+
+        // One shot, armed by the first line after a drain: an idle log doesn't wake the EDT for the rest of the game.
+        flushTimer = new Timer(FLUSH_INTERVAL, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                flush();
+            }
+        });
+        flushTimer.setRepeats(false);
+        logSink.setListener(new Runnable() {
+            public void run() {
+                flushTimer.start();
+            }
+        });
+        flush();
+    }
+
+    private void flush() {
+        flushBuffer.setLength(0);
+        if(!logSink.drain(flushBuffer))
+            return;
+
+        final Document document = textArea.getDocument();
+        final JScrollBar scrollBar = scrollPane.getVerticalScrollBar();
+
+        final boolean shouldScroll = scrollBar.getValue() + scrollBar.getSize().getHeight() + MONOSPACED.getSize() * 2 > scrollBar.getMaximum();
+        try {
+            if(flushBuffer.length() > MAX_DOCUMENT_LENGTH)
+                flushBuffer.delete(0, flushBuffer.length() - MAX_DOCUMENT_LENGTH);
+
+            final int overflow = document.getLength() + flushBuffer.length() - MAX_DOCUMENT_LENGTH;
+            if(overflow > 0)
+                document.remove(0, Math.min(overflow, document.getLength()));
+
+            document.insertString(document.getLength(), flushBuffer.toString(), null);
+        }
+        catch(final BadLocationException ignored) {
+        }
+        if(shouldScroll)
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    scrollBar.setValue(2147483647);
+                }
+            });
+    }
+}
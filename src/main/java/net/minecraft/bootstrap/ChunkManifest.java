@@ -0,0 +1,162 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+public class ChunkManifest {
+    public static final String ALGORITHM = "SHA-256";
+    // Each hasher keeps a direct buffer of one chunk, so the mirror mustn't get to pick an arbitrary size.
+    public static final int MAX_CHUNK_SIZE = 4194304;
+
+    public static File getFile(final File file) {
+        return new File(file.getPath() + ".chunks");
+    }
+
+    public static ChunkManifest parse(final Reader reader) throws IOException {
+        final ChunkManifest manifest;
+        try {
+            manifest = new Gson().fromJson(reader, ChunkManifest.class);
+        }
+        catch(final JsonParseException e) {
+            throw new IOException("Malformed chunk manifest", e);
+        }
+
+        if(manifest != null && manifest.chunkSize > MAX_CHUNK_SIZE)
+            throw new IOException(new StringBuilder().append("Chunk manifest's chunks of ").append(manifest.chunkSize).append(" bytes are larger than ").append(MAX_CHUNK_SIZE).toString());
+        if(manifest == null || !manifest.isValid())
+            throw new IOException("Inconsistent chunk manifest");
+        return manifest;
+    }
+
+    public static ChunkManifest load(final File file) {
+        if(!file.isFile())
+            return null;
+
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            return parse(reader);
+        }
+        catch(final IOException ignored) {
+            return null;
+        }
+        finally {
+            Bootstrap.closeSilently(reader);
+        }
+    }
+
+    public static byte[] getRoot(final List<byte[]> leaves) throws NoSuchAlgorithmException {
+        final MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+        List<byte[]> level = leaves;
+        while(level.size() > 1) {
+            final List<byte[]> parents = new ArrayList<byte[]>((level.size() + 1) / 2);
+            for(int i = 0; i < level.size(); i += 2)
+                if(i + 1 < level.size()) {
+                    digest.update(level.get(i));
+                    digest.update(level.get(i + 1));
+                    parents.add(digest.digest());
+                }
+                else
+                    parents.add(level.get(i));
+            level = parents;
+        }
+        return level.isEmpty() ? digest.digest() : level.get(0);
+    }
+
+    private static byte[] fromHex(final String hex) {
+        if(hex == null || hex.length() % 2 != 0)
+            return null;
+
+        final byte[] bytes = new byte[hex.length() / 2];
+        for(int i = 0; i < bytes.length; i++) {
+            final int high = Character.digit(hex.charAt(i * 2), 16);
+            final int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if(high < 0 || low < 0)
+                return null;
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    private String md5;
+    private long length;
+    private int chunkSize;
+    private String root;
+    private List<String> chunks;
+
+    private transient List<byte[]> chunkHashes;
+
+    private boolean isValid() {
+        if(md5 == null || length < 0L || chunkSize <= 0 || chunks == null || chunks.size() != getChunkCount())
+            return false;
+
+        chunkHashes = new ArrayList<byte[]>(chunks.size());
+        for(final String chunk : chunks) {
+            final byte[] hash = fromHex(chunk);
+            if(hash == null)
+                return false;
+            chunkHashes.add(hash);
+        }
+
+        try {
+            return Arrays.equals(fromHex(root), getRoot(chunkHashes));
+        }
+        catch(final NoSuchAlgorithmException ignored) {
+            return false;
+        }
+    }
+
+    public String getMd5() {
+        return md5;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public int getChunkCount() {
+        return (int) ((length + chunkSize - 1L) / chunkSize);
+    }
+
+    public long getStart(final int chunk) {
+        return (long) chunk * chunkSize;
+    }
+
+    public long getEnd(final int chunk) {
+        return Math.min(length, getStart(chunk + 1));
+    }
+
+    public int getChunkAt(final long offset) {
+        return (int) (offset / chunkSize);
+    }
+
+    public boolean matches(final int chunk, final byte[] hash) {
+        return Arrays.equals(chunkHashes.get(chunk), hash);
+    }
+
+    public void save(final File file) throws IOException {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+        try {
+            new Gson().toJson(this, writer);
+        }
+        finally {
+            writer.close();
+        }
+        Bootstrap.moveFile(tempFile, file);
+    }
+}
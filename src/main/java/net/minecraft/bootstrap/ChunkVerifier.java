@@ -0,0 +1,165 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ChunkVerifier {
+    private static final ExecutorService HASHERS = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, new StringBuilder().append("Chunk verifier #").append(count.incrementAndGet()).toString());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>();
+
+    public static List<Integer> verify(final File file, final ChunkManifest manifest) throws IOException {
+        final ChunkVerifier verifier = new ChunkVerifier(file, CompletableFuture.completedFuture(manifest));
+        return verifier.finish();
+    }
+
+    private final File file;
+    private final CompletableFuture<ChunkManifest> manifest;
+    private final BitSet submitted = new BitSet();
+    private final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+    private final List<Integer> chunks = new ArrayList<Integer>();
+
+    private FileChannel channel;
+    private boolean closed;
+
+    public ChunkVerifier(final File file, final CompletableFuture<ChunkManifest> manifest) {
+        this.file = file;
+        this.manifest = manifest;
+    }
+
+    public ChunkManifest getManifest() {
+        return manifest.getNow(null);
+    }
+
+    public void onProgress(final long segmentStart, final long from, final long to) {
+        final ChunkManifest manifest = getManifest();
+        if(manifest == null || to <= from)
+            return;
+
+        // Chunks that began before this segment's first byte may still be missing data written by another segment.
+        int chunk = Math.max(manifest.getChunkAt(from), manifest.getChunkAt(segmentStart + manifest.getStart(1) - 1L));
+        for(; chunk < manifest.getChunkCount() && manifest.getEnd(chunk) <= to; chunk++)
+            if(manifest.getEnd(chunk) > from)
+                submit(manifest, chunk);
+    }
+
+    private synchronized void submit(final ChunkManifest manifest, final int chunk) {
+        if(submitted.get(chunk))
+            return;
+
+        submitted.set(chunk);
+        chunks.add(Integer.valueOf(chunk));
+        results.add(HASHERS.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(check(manifest, chunk));
+            }
+        }));
+    }
+
+    private boolean check(final ChunkManifest manifest, final int chunk) throws IOException {
+        final int length = (int) (manifest.getEnd(chunk) - manifest.getStart(chunk));
+        ByteBuffer buffer = BUFFERS.get();
+        if(buffer == null || buffer.capacity() < length) {
+            buffer = ByteBuffer.allocateDirect(length);
+            BUFFERS.set(buffer);
+        }
+        buffer.clear();
+        buffer.limit(length);
+
+        final FileChannel channel = getChannel();
+        final long position = manifest.getStart(chunk);
+        while(buffer.hasRemaining())
+            if(channel.read(buffer, position + buffer.position()) < 0)
+                return false;
+        buffer.flip();
+
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(ChunkManifest.ALGORITHM);
+            digest.update(buffer);
+            return manifest.matches(chunk, digest.digest());
+        }
+        catch(final Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+        if(closed)
+            throw new IOException("Verifier closed");
+        if(channel == null)
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        return channel;
+    }
+
+    public List<Integer> finish() throws IOException {
+        final ChunkManifest manifest;
+        try {
+            manifest = this.manifest.get();
+        }
+        catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(final ExecutionException ignored) {
+            return null;
+        }
+        if(manifest == null || file.length() != manifest.getLength()) {
+            close();
+            return null;
+        }
+
+        for(int chunk = 0; chunk < manifest.getChunkCount(); chunk++)
+            submit(manifest, chunk);
+
+        final List<Integer> bad = new ArrayList<Integer>();
+        try {
+            for(int i = 0; i < results.size(); i++)
+                if(!results.get(i).get().booleanValue())
+                    bad.add(chunks.get(i));
+        }
+        catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(final ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        finally {
+            close();
+        }
+
+        Collections.sort(bad);
+        return bad;
+    }
+
+    public synchronized void close() {
+        for(final Future<Boolean> result : results)
+            result.cancel(false);
+        Bootstrap.closeSilently(channel);
+        closed = true;
+    }
+}
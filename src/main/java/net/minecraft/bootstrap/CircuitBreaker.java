@@ -0,0 +1,95 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+public class CircuitBreaker {
+    private static final int THRESHOLD = 3;
+    private static final long COOL_DOWN = 300000L;
+    private static final long MAX_COOL_DOWN = 3600000L;
+
+    private static final String FAILURES = "failures";
+    private static final String OPEN_UNTIL = "openUntil";
+
+    private final File file;
+    private final Properties state = new Properties();
+
+    public CircuitBreaker(final File file) {
+        this.file = file;
+
+        if(file.isFile()) {
+            InputStream inputStream = null;
+            try {
+                inputStream = new FileInputStream(file);
+                state.load(inputStream);
+            }
+            catch(final IOException ignored) {
+                state.clear();
+            }
+            finally {
+                Bootstrap.closeSilently(inputStream);
+            }
+        }
+    }
+
+    private long get(final String key) {
+        try {
+            return Long.parseLong(state.getProperty(key, "0"));
+        }
+        catch(final NumberFormatException ignored) {
+            return 0L;
+        }
+    }
+
+    public synchronized long getRemainingCoolDown() {
+        return Math.max(0L, get(OPEN_UNTIL) - System.currentTimeMillis());
+    }
+
+    public synchronized boolean allowRequest() {
+        return getRemainingCoolDown() == 0L;
+    }
+
+    public synchronized void recordSuccess() {
+        if(get(FAILURES) == 0L && get(OPEN_UNTIL) == 0L)
+            return;
+
+        state.clear();
+        save();
+    }
+
+    public synchronized void recordFailure() {
+        final long failures = get(FAILURES) + 1L;
+        state.setProperty(FAILURES, String.valueOf(failures));
+        if(failures >= THRESHOLD) {
+            final long coolDown = Math.min(MAX_COOL_DOWN, COOL_DOWN << Math.min(failures - THRESHOLD, 8L));
+            state.setProperty(OPEN_UNTIL, String.valueOf(System.currentTimeMillis() + coolDown));
+        }
+        save();
+    }
+
+    private void save() {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            state.store(outputStream, "Consecutive failed update checks and when the network may be tried again");
+            outputStream.close();
+            outputStream = null;
+
+            if(!tempFile.renameTo(file)) {
+                file.delete();
+                tempFile.renameTo(file);
+            }
+        }
+        catch(final IOException ignored) {
+        }
+        finally {
+            Bootstrap.closeSilently(outputStream);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package net.minecraft.bootstrap;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Daemon {
+    private static final String STATE_FILE = "daemon.properties";
+    private static final String PORT = "port";
+    private static final String TOKEN = "token";
+    private static final String OK = "OK";
+
+    private static final int CONNECT_TIMEOUT = 250;
+    private static final int REQUEST_TIMEOUT = 5000;
+    private static final int REPLY_TIMEOUT = 600000;
+    private static final int MAX_ARGS = 1024;
+
+    private static volatile boolean resident;
+
+    private static File retainedJar;
+    private static String retainedMd5;
+    private static LauncherClassLoader retainedClassLoader;
+
+    public static boolean isResident() {
+        return resident;
+    }
+
+    public static synchronized LauncherClassLoader getClassLoader(final File launcherJar, final String md5) {
+        if(md5 == null || !md5.equals(retainedMd5) || !launcherJar.getAbsoluteFile().equals(retainedJar))
+            return null;
+        return retainedClassLoader;
+    }
+
+    public static synchronized void retain(final File launcherJar, final String md5, final LauncherClassLoader classLoader) {
+        if(!resident || md5 == null)
+            return;
+
+        retainedJar = launcherJar.getAbsoluteFile();
+        retainedMd5 = md5;
+        retainedClassLoader = classLoader;
+    }
+
+    private static File getWorkDir(final String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            if(args[i].equals("--"))
+                break;
+            if(args[i].equals("--workDir") && i + 1 < args.length)
+                return new File(args[i + 1]);
+            if(args[i].startsWith("--workDir="))
+                return new File(args[i].substring(10));
+        }
+        return Util.getWorkingDirectory();
+    }
+
+    private static Properties load(final File file) throws IOException {
+        final Properties properties = new Properties();
+        final InputStream inputStream = new FileInputStream(file);
+        try {
+            properties.load(inputStream);
+        }
+        finally {
+            inputStream.close();
+        }
+        return properties;
+    }
+
+    public static boolean handOff(final String[] args) {
+        for(final String arg : args) {
+            if(arg.equals("--"))
+                break;
+            if(arg.equals("--daemon") || arg.equals("--noDaemon") || arg.equals("--help"))
+                return false;
+        }
+
+        final File workDir = getWorkDir(args).getAbsoluteFile();
+        final File stateFile = new File(workDir, STATE_FILE);
+        if(!stateFile.isFile())
+            return false;
+
+        final Socket socket = new Socket();
+        try {
+            final Properties state = load(stateFile);
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(state.getProperty(PORT, "0"))), CONNECT_TIMEOUT);
+            socket.setSoTimeout(REPLY_TIMEOUT);
+
+            final DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+            outputStream.writeUTF(state.getProperty(TOKEN, ""));
+            outputStream.writeUTF(workDir.getPath());
+            outputStream.writeInt(args.length);
+            for(final String arg : args)
+                outputStream.writeUTF(arg);
+            outputStream.flush();
+
+            final String reply = new DataInputStream(socket.getInputStream()).readUTF();
+            if(OK.equals(reply)) {
+                System.out.println(new StringBuilder().append("Started by the bootstrap daemon for ").append(workDir).toString());
+                return true;
+            }
+
+            System.out.println(new StringBuilder().append("Bootstrap daemon refused the launch (").append(reply).append("), starting here").toString());
+            return false;
+        }
+        catch(final Exception ignored) {
+            // No daemon listening (it idled out or was killed with the launcher), start normally.
+            return false;
+        }
+        finally {
+            Bootstrap.closeSilently(socket);
+        }
+    }
+
+    private final File workDir;
+    private final long idleTimeout;
+    private final File stateFile;
+    private final AtomicInteger launches = new AtomicInteger();
+
+    // A launch waits for its update deadline and builds the launcher, the next request mustn't queue behind that.
+    private final ExecutorService launchers = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, new StringBuilder().append("Bootstrap daemon launch #").append(count.incrementAndGet()).toString());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private String token;
+
+    public Daemon(final File workDir, final long idleTimeout) {
+        this.workDir = workDir.getAbsoluteFile();
+        this.idleTimeout = idleTimeout;
+        stateFile = new File(this.workDir, STATE_FILE);
+    }
+
+    public void serve(final Bootstrap bootstrap) throws IOException {
+        resident = true;
+        final Telemetry.Span span = Telemetry.start("daemonWarmUp");
+        if(!GraphicsEnvironment.isHeadless())
+            Toolkit.getDefaultToolkit();
+        bootstrap.warmUpLauncher();
+        span.end();
+
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        try {
+            final byte[] secret = new byte[16];
+            new SecureRandom().nextBytes(secret);
+            final StringBuilder builder = new StringBuilder();
+            for(final byte b : secret)
+                builder.append(String.format("%02x", new Object[] { Integer.valueOf(b & 0xFF) }));
+            token = builder.toString();
+            writeState(server.getLocalPort());
+
+            bootstrap.println(new StringBuilder().append("Bootstrap daemon listening on port ").append(server.getLocalPort()).append(idleTimeout > 0L ? new StringBuilder().append(", idling out after ").append(idleTimeout / 1000L).append("s").toString() : "").toString());
+            server.setSoTimeout((int) Math.min(Integer.MAX_VALUE, Math.max(0L, idleTimeout)));
+            while(true) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                }
+                catch(final SocketTimeoutException ignored) {
+                    System.out.println("Bootstrap daemon idle, exiting");
+                    break;
+                }
+
+                launchers.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            handle(socket);
+                        }
+                        catch(final IOException e) {
+                            System.out.println(new StringBuilder().append("Bootstrap daemon request failed: ").append(e).toString());
+                        }
+                        finally {
+                            Bootstrap.closeSilently(socket);
+                        }
+                    }
+                });
+            }
+        }
+        finally {
+            server.close();
+            // Launches still in progress finish before the daemon goes away.
+            launchers.shutdown();
+            try {
+                launchers.awaitTermination(REPLY_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                if(stateFile.isFile() && token.equals(load(stateFile).getProperty(TOKEN)))
+                    stateFile.delete();
+            }
+            catch(final IOException ignored) {
+            }
+        }
+    }
+
+    private void writeState(final int port) throws IOException {
+        final Properties state = new Properties();
+        state.setProperty(PORT, String.valueOf(port));
+        state.setProperty(TOKEN, token);
+
+        // The token is all that keeps other local users from launching in this JVM, so only the owner may read it.
+        final File tempFile = new File(stateFile.getPath() + ".tmp");
+        tempFile.delete();
+        if(!tempFile.createNewFile())
+            throw new IOException(new StringBuilder().append("Unable to create ").append(tempFile.getAbsolutePath()).toString());
+        tempFile.setReadable(false, false);
+        tempFile.setWritable(false, false);
+        tempFile.setReadable(true, true);
+        tempFile.setWritable(true, true);
+
+        final OutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            state.store(outputStream, "Bootstrap daemon for this work dir");
+        }
+        finally {
+            outputStream.close();
+        }
+        Bootstrap.moveFile(tempFile, stateFile);
+    }
+
+    private void handle(final Socket socket) throws IOException {
+        socket.setSoTimeout(REQUEST_TIMEOUT);
+        final DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+        final DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+
+        if(!MessageDigest.isEqual(token.getBytes("UTF-8"), inputStream.readUTF().getBytes("UTF-8"))) {
+            outputStream.writeUTF("bad token");
+            return;
+        }
+        if(!workDir.getPath().equals(inputStream.readUTF())) {
+            outputStream.writeUTF("different work dir");
+            return;
+        }
+
+        final int count = inputStream.readInt();
+        if(count < 0 || count > MAX_ARGS) {
+            outputStream.writeUTF("too many arguments");
+            return;
+        }
+        final String[] args = new String[count];
+        for(int i = 0; i < count; i++)
+            args[i] = inputStream.readUTF();
+
+        // A relative --workDir was relative to the client's directory, not ours.
+        for(int i = 0; i < count && !args[i].equals("--"); i++)
+            if(args[i].equals("--workDir") && i + 1 < count)
+                args[i + 1] = workDir.getPath();
+            else if(args[i].startsWith("--workDir="))
+                args[i] = new StringBuilder().append("--workDir=").append(workDir.getPath()).toString();
+
+        // Telemetry is per JVM, a launch overlapping another one adds its spans to the same run.
+        if(launches.incrementAndGet() == 1)
+            Telemetry.reset();
+        final boolean started;
+        try {
+            started = Bootstrap.run(args);
+        }
+        finally {
+            launches.decrementAndGet();
+        }
+        outputStream.writeUTF(started ? OK : "launch failed, see the daemon's log");
+        outputStream.flush();
+    }
+}
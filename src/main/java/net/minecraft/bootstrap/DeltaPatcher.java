@@ -0,0 +1,136 @@
+package net.minecraft.bootstrap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
+
+public class DeltaPatcher {
+    public static final int MAGIC = 0x4d434450;
+    public static final int VERSION = 1;
+
+    static final int OP_END = 0;
+    static final int OP_COPY = 1;
+    static final int OP_DATA = 2;
+
+    static String toHex(final byte[] bytes) {
+        return String.format("%1$032x", new Object[] { new BigInteger(1, bytes) });
+    }
+
+    private final File source;
+    private final File target;
+
+    private String targetMd5;
+    private long targetLength;
+
+    public DeltaPatcher(final File source, final File target) {
+        this.source = source;
+        this.target = target;
+    }
+
+    public String getTargetMd5() {
+        return targetMd5;
+    }
+
+    public long getTargetLength() {
+        return targetLength;
+    }
+
+    public void apply(final InputStream patch, final String sourceMd5, final String expectedMd5) throws IOException {
+        final DataInputStream input = new DataInputStream(new GZIPInputStream(patch, 65536));
+
+        if(input.readInt() != MAGIC)
+            throw new IOException("Not a launcher patch");
+        final int version = input.readInt();
+        if(version != VERSION)
+            throw new IOException(new StringBuilder().append("Unsupported patch version ").append(version).toString());
+
+        final byte[] md5 = new byte[16];
+        input.readFully(md5);
+        if(!toHex(md5).equalsIgnoreCase(sourceMd5))
+            throw new IOException(new StringBuilder().append("Patch was made for ").append(toHex(md5)).append(", not ").append(sourceMd5).toString());
+        input.readFully(md5);
+        targetMd5 = toHex(md5);
+        targetLength = input.readLong();
+        // A stale patch would otherwise install an outdated launcher as a successful update.
+        if(!targetMd5.equalsIgnoreCase(expectedMd5))
+            throw new IOException(new StringBuilder().append("Patch leads to ").append(targetMd5).append(", but the mirror serves ").append(expectedMd5).toString());
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        }
+        catch(final NoSuchAlgorithmException e) {
+            throw new IOException(e.toString());
+        }
+
+        final RandomAccessFile sourceFile = new RandomAccessFile(source, "r");
+        final FileOutputStream targetFile = new FileOutputStream(target);
+        final OutputStream output = new DigestOutputStream(new BufferedOutputStream(targetFile, 65536), digest);
+        try {
+            final byte[] buffer = new byte[65536];
+            long written = 0L;
+            int op = input.readUnsignedByte();
+            while(op != OP_END) {
+                if(op == OP_COPY) {
+                    final long offset = input.readLong();
+                    int length = input.readInt();
+                    if(offset < 0L || length < 0 || offset + length > sourceFile.length())
+                        throw new IOException(new StringBuilder().append("Patch copies outside of the source file at ").append(offset).toString());
+
+                    sourceFile.seek(offset);
+                    written += length;
+                    while(length > 0) {
+                        final int read = Math.min(buffer.length, length);
+                        sourceFile.readFully(buffer, 0, read);
+                        output.write(buffer, 0, read);
+                        length -= read;
+                    }
+                }
+                else if(op == OP_DATA) {
+                    int length = input.readInt();
+                    if(length < 0)
+                        throw new IOException("Negative data length in patch");
+
+                    written += length;
+                    while(length > 0) {
+                        final int read = Math.min(buffer.length, length);
+                        input.readFully(buffer, 0, read);
+                        output.write(buffer, 0, read);
+                        length -= read;
+                    }
+                }
+                else
+                    throw new IOException(new StringBuilder().append("Unknown patch operation ").append(op).toString());
+
+                if(written > targetLength)
+                    throw new IOException("Patch output is longer than announced");
+                op = input.readUnsignedByte();
+            }
+
+            if(written != targetLength)
+                throw new IOException(new StringBuilder().append("Patch produced ").append(written).append(" bytes, expected ").append(targetLength).toString());
+
+            // On disk before renameNew() moves it over launcher.jar, as transfer() does for full downloads.
+            output.flush();
+            targetFile.getChannel().force(true);
+        }
+        finally {
+            sourceFile.close();
+            output.close();
+        }
+
+        final String md5sum = toHex(digest.digest());
+        if(!md5sum.equalsIgnoreCase(targetMd5))
+            throw new IOException(new StringBuilder().append("Patched file has MD5 ").append(md5sum).append(", expected ").append(targetMd5).toString());
+    }
+}
@@ -0,0 +1,217 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+
+public class DownloadState {
+    private static final long SAVE_INTERVAL = 1048576L;
+
+    public static File getStateFile(final File targetFile) {
+        return new File(targetFile.getPath() + ".part");
+    }
+
+    public static boolean isPartial(final File targetFile) {
+        return getStateFile(targetFile).exists();
+    }
+
+    public static void delete(final File targetFile) {
+        final File stateFile = getStateFile(targetFile);
+        if(stateFile.exists())
+            stateFile.delete();
+    }
+
+    public static void discard(final File targetFile) {
+        delete(targetFile);
+        if(targetFile.exists())
+            targetFile.delete();
+    }
+
+    public static DownloadState create(final File targetFile, final String eTag, final long length, final int segments) throws IOException {
+        final DownloadState state = new DownloadState(targetFile, eTag, length, segments);
+        for(int i = 0; i < segments; i++)
+            state.offsets[i] = state.getStart(i);
+        state.save();
+        return state;
+    }
+
+    public static DownloadState load(final File targetFile) {
+        final File stateFile = getStateFile(targetFile);
+        if(!stateFile.isFile())
+            return null;
+
+        final Properties properties = new Properties();
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(stateFile);
+            properties.load(inputStream);
+
+            final String eTag = properties.getProperty("etag");
+            final long length = Long.parseLong(properties.getProperty("length"));
+            final int segments = Integer.parseInt(properties.getProperty("segments"));
+            if(eTag == null || length <= 0L || segments < 1 || !targetFile.isFile() || targetFile.length() != length)
+                return null;
+
+            final DownloadState state = new DownloadState(targetFile, eTag, length, segments);
+            for(int i = 0; i < segments; i++) {
+                final long offset = Long.parseLong(properties.getProperty("segment." + i));
+                if(offset < state.getStart(i) || offset > state.getEnd(i))
+                    return null;
+                state.offsets[i] = offset;
+            }
+
+            if(state.getFirstIncomplete() < 0)
+                for(int i = segments - 1; i >= 0; i--)
+                    if(state.getEnd(i) > state.getStart(i)) {
+                        state.offsets[i]--;
+                        break;
+                    }
+
+            return state;
+        }
+        catch(final Exception ignored) {
+            return null;
+        }
+        finally {
+            Bootstrap.closeSilently(inputStream);
+        }
+    }
+
+    private final File targetFile;
+    private final String eTag;
+    private final long length;
+    private final long segmentLength;
+    private final long[] offsets;
+
+    private long unsaved;
+    private boolean saving;
+
+    private DownloadState(final File targetFile, final String eTag, final long length, final int segments) {
+        this.targetFile = targetFile;
+        this.eTag = eTag;
+        this.length = length;
+        segmentLength = (length + segments - 1) / segments;
+        offsets = new long[segments];
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public int getSegments() {
+        return offsets.length;
+    }
+
+    public long getStart(final int segment) {
+        return Math.min(length, segment * segmentLength);
+    }
+
+    public long getEnd(final int segment) {
+        return Math.min(length, (segment + 1) * segmentLength);
+    }
+
+    public boolean matchesContentRange(final String contentRange, final long offset) {
+        if(contentRange == null || !contentRange.startsWith("bytes "))
+            return false;
+
+        final int dash = contentRange.indexOf('-');
+        final int slash = contentRange.indexOf('/');
+        if(dash < 0 || slash < dash)
+            return false;
+
+        try {
+            return Long.parseLong(contentRange.substring(6, dash).trim()) == offset && Long.parseLong(contentRange.substring(slash + 1).trim()) == length;
+        }
+        catch(final NumberFormatException ignored) {
+            return false;
+        }
+    }
+
+    public synchronized long getOffset(final int segment) {
+        return offsets[segment];
+    }
+
+    public synchronized boolean isComplete(final int segment) {
+        return offsets[segment] >= getEnd(segment);
+    }
+
+    public synchronized int getFirstIncomplete() {
+        for(int i = 0; i < offsets.length; i++)
+            if(offsets[i] < getEnd(i))
+                return i;
+        return -1;
+    }
+
+    public synchronized long getCompletedBytes() {
+        long completed = 0L;
+        for(int i = 0; i < offsets.length; i++)
+            completed += offsets[i] - getStart(i);
+        return completed;
+    }
+
+    public void advance(final int segment, final long bytes, final FileChannel channel) throws IOException {
+        final long[] saved;
+        synchronized(this) {
+            offsets[segment] += bytes;
+            unsaved += bytes;
+            if(unsaved < SAVE_INTERVAL || saving)
+                return;
+
+            saving = true;
+            unsaved = 0L;
+            saved = offsets.clone();
+        }
+
+        // The other segments keep writing while the file is forced, only what was written before it gets saved.
+        try {
+            channel.force(false);
+            synchronized(this) {
+                save(saved);
+            }
+        }
+        finally {
+            synchronized(this) {
+                saving = false;
+            }
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        save(offsets);
+        unsaved = 0L;
+    }
+
+    private void save(final long[] offsets) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("etag", eTag);
+        properties.setProperty("length", String.valueOf(length));
+        properties.setProperty("segments", String.valueOf(offsets.length));
+        for(int i = 0; i < offsets.length; i++)
+            properties.setProperty("segment." + i, String.valueOf(offsets[i]));
+
+        final File stateFile = getStateFile(targetFile);
+        final File tempFile = new File(stateFile.getPath() + ".tmp");
+        final OutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            properties.store(outputStream, "Partial download of " + targetFile.getName());
+        }
+        finally {
+            outputStream.close();
+        }
+
+        if(!tempFile.renameTo(stateFile)) {
+            stateFile.delete();
+            if(!tempFile.renameTo(stateFile))
+                throw new IOException("Unable to write download state to " + stateFile.getAbsolutePath());
+        }
+    }
+}
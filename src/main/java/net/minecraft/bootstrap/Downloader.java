@@ -1,17 +1,32 @@
 package net.minecraft.bootstrap;
 
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.math.BigInteger;
 import java.net.BindException;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import javax.net.ssl.SSLHandshakeException;
 
@@ -20,22 +35,139 @@ public class Downloader implements Runnable {
         public final CountDownLatch foundUpdateLatch = new CountDownLatch(1);
         public final AtomicBoolean foundUpdate = new AtomicBoolean(false);
         public final CountDownLatch hasDownloadedLatch = new CountDownLatch(1);
+
+        // Lives here rather than on the Downloader so a handoff to the background can swap it mid download.
+        private volatile RetryPolicy retryPolicy = new BackoffRetryPolicy(MAX_RETRIES, Long.MAX_VALUE);
+
+        public RetryPolicy getRetryPolicy() {
+            return retryPolicy;
+        }
+
+        public void setRetryPolicy(final RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+        }
+
+        // Threads working on the download, lowered together once the launcher starts and the download continues in
+        // the background.
+        private final List<Thread> threads = new ArrayList<Thread>();
+        private int priority = Thread.NORM_PRIORITY;
+
+        public synchronized void register(final Thread thread) {
+            thread.setPriority(priority);
+            threads.add(thread);
+        }
+
+        public synchronized void unregister(final Thread thread) {
+            threads.remove(thread);
+            thread.setPriority(Thread.NORM_PRIORITY);
+        }
+
+        public synchronized void setPriority(final int priority) {
+            this.priority = priority;
+            for(final Thread thread : threads)
+                thread.setPriority(priority);
+        }
     }
 
     private static final int MAX_RETRIES = 10;
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final int RETRY = 0;
+    private static final int NEXT_MIRROR = 1;
+    private static final int GIVE_UP = 2;
+
+    private static final int MAX_SEGMENTS = 4;
+    private static final long MIN_SEGMENT_LENGTH = 262144L;
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final int FAILOVER_CONNECT_TIMEOUT = 5000;
     private final Proxy proxy;
     private final String currentMd5;
+    private final File currentFile;
     private final File targetFile;
     private final Controller controller;
 
     private final Bootstrap bootstrap;
 
+    private Throttle throttle = new Throttle();
+    private final Progress progress = new Progress();
+    private final AtomicLong peakRate = new AtomicLong();
+
     public Downloader(final Controller controller, final Bootstrap bootstrap, final Proxy proxy, final String currentMd5, final File targetFile) {
+        this(controller, bootstrap, proxy, currentMd5, null, targetFile);
+    }
+
+    public Downloader(final Controller controller, final Bootstrap bootstrap, final Proxy proxy, final String currentMd5, final File currentFile, final File targetFile) {
         this.controller = controller;
         this.bootstrap = bootstrap;
         this.proxy = proxy;
         this.currentMd5 = currentMd5;
+        this.currentFile = currentFile;
         this.targetFile = targetFile;
+
+        progress.addListener(new ProgressListener() {
+            public void onProgress(final long bytes, final long total, final long bytesPerSecond, final long remainingMillis) {
+                long peak = peakRate.get();
+                while(bytesPerSecond > peak && !peakRate.compareAndSet(peak, bytesPerSecond))
+                    peak = peakRate.get();
+            }
+        });
+    }
+
+    public void setRetryPolicy(final RetryPolicy retryPolicy) {
+        controller.setRetryPolicy(retryPolicy);
+    }
+
+    public Controller getController() {
+        return controller;
+    }
+
+    public Throttle getThrottle() {
+        return throttle;
+    }
+
+    public void setThrottle(final Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    public Progress getProgress() {
+        return progress;
+    }
+
+    private long getContentLength(final HttpURLConnection connection) {
+        final String contentLength = connection.getHeaderField("Content-Length");
+        if(contentLength == null)
+            return -1L;
+        try {
+            return Long.parseLong(contentLength.trim());
+        }
+        catch(final NumberFormatException ignored) {
+            return -1L;
+        }
+    }
+
+    private boolean isResumable(final HttpURLConnection connection, final String rawETag) {
+        if(rawETag == null || rawETag.startsWith("W/"))
+            return false;
+        if(connection.getHeaderField("Content-Encoding") != null)
+            return false;
+
+        return getContentLength(connection) > 0L;
+    }
+
+    private long getRangeTotal(final HttpURLConnection connection) {
+        final String contentRange = connection.getHeaderField("Content-Range");
+        if(contentRange == null || !contentRange.startsWith("bytes ") || contentRange.indexOf('/') < 0)
+            return -1L;
+        try {
+            return Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1).trim());
+        }
+        catch(final NumberFormatException ignored) {
+            return -1L;
+        }
+    }
+
+    private int getSegmentCount(final long contentLength) {
+        return (int) Math.max(1L, Math.min(MAX_SEGMENTS, contentLength / MIN_SEGMENT_LENGTH));
     }
 
     public HttpURLConnection getConnection(final URL url) throws IOException {
@@ -46,85 +178,385 @@ public class Downloader implements Runnable {
         bootstrap.println(str);
     }
 
+    private String getMd5ETag(final String rawETag) {
+        if(rawETag == null || !rawETag.matches("\"[0-9a-fA-F]{32}\""))
+            return null;
+        return rawETag.substring(1, 33).toLowerCase();
+    }
+
+    private boolean patch(final String mirror, final String targetMd5) {
+        try {
+            final URL url = Mirrors.resolve(mirror, String.format(BootstrapConstants.PATCH_FILE, new Object[] { currentMd5.toLowerCase() }));
+            final HttpURLConnection connection = getConnection(url);
+            connection.setUseCaches(false);
+            connection.setConnectTimeout(30000);
+            connection.setReadTimeout(10000);
+
+            log(new StringBuilder().append("Looking for patch: ").append(url).toString());
+            if(connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                log(new StringBuilder().append("No patch available (HTTP ").append(connection.getResponseCode()).append(")").toString());
+                connection.disconnect();
+                return false;
+            }
+
+            controller.foundUpdate.set(true);
+            controller.foundUpdateLatch.countDown();
+
+            final Telemetry.Span transferSpan = Telemetry.start("transfer").set("kind", "patch");
+            try {
+                final long startDownload = System.nanoTime();
+                progress.start(0L, getContentLength(connection));
+                final CountingInputStream inputStream = new CountingInputStream(new ThrottledInputStream(connection.getInputStream(), throttle, progress));
+                final DeltaPatcher patcher = new DeltaPatcher(currentFile, targetFile);
+                try {
+                    patcher.apply(inputStream, currentMd5, targetMd5);
+                }
+                finally {
+                    inputStream.close();
+                }
+                final long elapsedDownload = System.nanoTime() - startDownload;
+                progress.finish();
+
+                final float elapsedSeconds = (1L + elapsedDownload) / 1.0E+09F;
+                bootstrap.cacheMd5(targetFile, patcher.getTargetMd5());
+                transferSpan.set("bytes", Long.valueOf(inputStream.getCount())).set("kbPerSecond", Float.valueOf(inputStream.getCount() / 1024.0F / elapsedSeconds));
+                log(String.format("Patched to %s with %.1fkb instead of %.1fkb in %ds", new Object[] { patcher.getTargetMd5(), Float.valueOf(inputStream.getCount() / 1024.0F), Float.valueOf(patcher.getTargetLength() / 1024.0F), Integer.valueOf((int) elapsedSeconds) }));
+            }
+            catch(final Exception e) {
+                transferSpan.set("error", e.toString());
+                throw e;
+            }
+            finally {
+                transferSpan.end();
+            }
+            return true;
+        }
+        catch(final Exception e) {
+            log(new StringBuilder().append("Patching failed, falling back to full download: ").append(e.toString()).toString());
+            targetFile.delete();
+            return false;
+        }
+    }
+
+    private boolean downloadLzma(final String mirror) {
+        try {
+            final URL url = Mirrors.resolve(mirror, BootstrapConstants.LAUNCHER_LZMA_FILE);
+            final HttpURLConnection connection = getConnection(url);
+            connection.setUseCaches(false);
+            connection.setConnectTimeout(30000);
+            connection.setReadTimeout(10000);
+
+            log(new StringBuilder().append("Downloading: ").append(url).toString());
+            if(connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                log(new StringBuilder().append("No compressed launcher available (HTTP ").append(connection.getResponseCode()).append(")").toString());
+                connection.disconnect();
+                return false;
+            }
+
+            controller.foundUpdate.set(true);
+            controller.foundUpdateLatch.countDown();
+
+            String eTag = connection.getHeaderField("ETag");
+            if(eTag == null)
+                eTag = "-";
+            else
+                eTag = eTag.substring(1, eTag.length() - 1);
+
+            final Telemetry.Span transferSpan = Telemetry.start("transfer").set("kind", "lzma");
+            final LzmaDownload download = new LzmaDownload(targetFile);
+            try {
+                final long startDownload = System.nanoTime();
+                progress.start(0L, getContentLength(connection));
+                download.download(new ThrottledInputStream(connection.getInputStream(), throttle, progress));
+                final long elapsedDownload = System.nanoTime() - startDownload;
+                progress.finish();
+
+                final float elapsedSeconds = (1L + elapsedDownload) / 1.0E+09F;
+                final float kbRead = download.getPackedBytes() / 1024.0F;
+                log(String.format("Downloaded %.1fkb (%.1fkb unpacked) in %ds at %.1fkb/s", new Object[] { Float.valueOf(kbRead), Float.valueOf(download.getUnpackedBytes() / 1024.0F), Integer.valueOf((int) elapsedSeconds), Float.valueOf(kbRead / elapsedSeconds) }));
+                transferSpan.set("bytes", Long.valueOf(download.getPackedBytes())).set("unpackedBytes", Long.valueOf(download.getUnpackedBytes())).set("kbPerSecond", Float.valueOf(kbRead / elapsedSeconds));
+            }
+            catch(final Exception e) {
+                transferSpan.set("error", e.toString());
+                throw e;
+            }
+            finally {
+                transferSpan.end();
+            }
+
+            if(!eTag.contains("-") && !eTag.equalsIgnoreCase(download.getPackedMd5())) {
+                log("After downloading, the MD5 hash of the compressed launcher didn't match.");
+                targetFile.delete();
+                return false;
+            }
+
+            bootstrap.cacheMd5(targetFile, download.getUnpackedMd5());
+
+            return true;
+        }
+        catch(final Exception e) {
+            log(new StringBuilder().append("Compressed download failed, falling back to the raw launcher: ").append(e.toString()).toString());
+            suggestHelp(e);
+            targetFile.delete();
+            return false;
+        }
+    }
+
     public void run() {
+        final Mirrors mirrors = bootstrap.getMirrors();
+        final List<String> ordered = mirrors.getOrdered();
+        final CircuitBreaker circuitBreaker = bootstrap.getCircuitBreaker();
+
+        if(currentFile != null && !circuitBreaker.allowRequest()) {
+            log(new StringBuilder().append("Skipping the update check for another ").append(circuitBreaker.getRemainingCoolDown() / 1000L).append("s after repeated failures").toString());
+            controller.foundUpdate.set(false);
+            controller.foundUpdateLatch.countDown();
+            return;
+        }
+
+        if(currentMd5 == null && bootstrap.isLzmaEnabled() && !DownloadState.isPartial(targetFile) && downloadLzma(ordered.get(0))) {
+            circuitBreaker.recordSuccess();
+            controller.hasDownloadedLatch.countDown();
+            return;
+        }
+
+        ChunkManifest.getFile(targetFile).delete();
+
+        final List<String> candidates = new ArrayList<String>(ordered);
         int retries = 0;
+        int mirrorIndex = 0;
+        boolean patchTried = false;
+        boolean probeRanges = true;
         while(true) {
             retries++;
-            if(retries > 10)
-                break;
+            final String mirror = candidates.get(mirrorIndex % candidates.size());
+            final Telemetry.Span connectSpan = Telemetry.start("connect").set("mirror", mirror).set("try", Integer.valueOf(retries));
+            int outcome = RETRY;
+            long retryAfter = 0L;
+            ChunkVerifier verifier = null;
             try {
-                final URL url = new URL(BootstrapConstants.LAUNCHER_URL);
+                final URL url = Mirrors.resolve(mirror, BootstrapConstants.LAUNCHER_FILE);
 
                 final HttpURLConnection connection = getConnection(url);
 
                 connection.setUseCaches(false);
                 connection.setDefaultUseCaches(false);
-                connection.setRequestProperty("Cache-Control", "no-store,max-age=0,no-cache");
-                connection.setRequestProperty("Expires", "0");
-                connection.setRequestProperty("Pragma", "no-cache");
-                if(currentMd5 != null)
-                    connection.setRequestProperty("If-None-Match", currentMd5.toLowerCase());
+                connection.setRequestProperty("Cache-Control", "no-cache");
+                if(currentMd5 != null) {
+                    // A mirror whose ETags aren't MD5s answers 304 to the validators recorded when this launcher was installed.
+                    final String localETag = new StringBuilder().append('"').append(currentMd5.toLowerCase()).append('"').toString();
+                    final String cachedETag = bootstrap.getUpdateCheckCache().getETag(currentMd5);
+                    connection.setRequestProperty("If-None-Match", cachedETag == null || cachedETag.equals(localETag) ? localETag : new StringBuilder().append(localETag).append(", ").append(cachedETag).toString());
+                    final String lastModified = bootstrap.getUpdateCheckCache().getLastModified(currentMd5);
+                    if(lastModified != null)
+                        connection.setRequestProperty("If-Modified-Since", lastModified);
+                }
+
+                // Never ask for a body that segments would only cut short: a resume asks for the rest of its first
+                // missing segment, a new download for one byte, whose 206 proves ranges work and tells the length.
+                final DownloadState partial = DownloadState.load(targetFile);
+                final long resumeOffset = partial == null ? 0L : partial.getOffset(partial.getFirstIncomplete());
+                if(partial != null) {
+                    connection.setRequestProperty("Range", new StringBuilder().append("bytes=").append(resumeOffset).append("-").append(partial.getEnd(partial.getFirstIncomplete()) - 1L).toString());
+                    connection.setRequestProperty("If-Range", partial.getETag());
+                }
+                else if(probeRanges)
+                    connection.setRequestProperty("Range", "bytes=0-0");
 
-                connection.setConnectTimeout(30000);
+                connection.setConnectTimeout(ordered.size() > 1 ? FAILOVER_CONNECT_TIMEOUT : CONNECT_TIMEOUT);
                 connection.setReadTimeout(10000);
 
-                log(new StringBuilder().append("Downloading: ").append(BootstrapConstants.LAUNCHER_URL).append(retries > 1 ? String.format(" (try %d/%d)", new Object[] { Integer.valueOf(retries), Integer.valueOf(10) }) : "").toString());
+                log(new StringBuilder().append("Downloading: ").append(url).append(retries > 1 ? String.format(" (try %d)", new Object[] { Integer.valueOf(retries) }) : "").toString());
                 final long start = System.nanoTime();
                 connection.connect();
                 final long elapsed = System.nanoTime() - start;
                 log(new StringBuilder().append("Got reply in: ").append(elapsed / 1000000L).append("ms").toString());
 
                 final int code = connection.getResponseCode() / 100;
+                // Errors are counted against the mirror by the fail-over below, only a served answer resets them.
+                if(code == 2 || connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+                    mirrors.recordSuccess(mirror, (System.nanoTime() - start) / 1000000L);
+                connectSpan.set("status", Integer.valueOf(connection.getResponseCode())).end();
 
                 if(code == 2) {
-                    String eTag = connection.getHeaderField("ETag");
+                    DownloadState state = null;
+                    long headOffset = 0L;
+                    final boolean probed = partial == null && connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+                    if(probed) {
+                        final long total = getRangeTotal(connection);
+                        release(connection);
+                        if(total <= 0L || !isResumable(connection, connection.getHeaderField("ETag"))) {
+                            log("Mirror can't resume this download, fetching it whole");
+                            probeRanges = false;
+                            continue;
+                        }
+                        DownloadState.delete(targetFile);
+                        headOffset = -1L;
+                    }
+                    else if(connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+                        if(!partial.matchesContentRange(connection.getHeaderField("Content-Range"), resumeOffset)) {
+                            DownloadState.discard(targetFile);
+                            connection.disconnect();
+                            throw new IOException("Unexpected partial response, discarding partial download");
+                        }
+                        state = partial;
+                        headOffset = resumeOffset;
+                        log(new StringBuilder().append("Resuming download with ").append(partial.getCompletedBytes()).append(" of ").append(partial.getLength()).append(" bytes already present").toString());
+                    }
+                    else
+                        DownloadState.delete(targetFile);
 
-                    if(eTag == null)
+                    final String targetMd5 = getMd5ETag(connection.getHeaderField("ETag"));
+                    if(state == null && !patchTried && targetMd5 == null && currentMd5 != null && currentFile != null && currentFile.isFile()) {
+                        patchTried = true;
+                        log("Mirror's ETag isn't an MD5, so a patch couldn't be checked against it, downloading the full launcher");
+                    }
+                    if(state == null && !patchTried && currentMd5 != null && currentFile != null && currentFile.isFile()) {
+                        patchTried = true;
+                        // An open 200 would keep pushing the whole jar while the patch downloads, drop it first.
+                        if(!probed)
+                            connection.disconnect();
+                        if(patch(mirror, targetMd5)) {
+                            bootstrap.getUpdateCheckCache().recordDownloaded(targetMd5, connection);
+                            circuitBreaker.recordSuccess();
+                            controller.hasDownloadedLatch.countDown();
+                            return;
+                        }
+                        if(!probed)
+                            continue;
+                    }
+
+                    final String rawETag = state != null ? state.getETag() : connection.getHeaderField("ETag");
+                    String eTag;
+
+                    if(rawETag == null)
                         eTag = "-";
                     else
-                        eTag = eTag.substring(1, eTag.length() - 1);
+                        eTag = rawETag.substring(1, rawETag.length() - 1);
 
                     controller.foundUpdate.set(true);
                     controller.foundUpdateLatch.countDown();
 
-                    final InputStream inputStream = connection.getInputStream();
-                    final FileOutputStream outputStream = new FileOutputStream(targetFile);
+                    if(probed) {
+                        final long contentLength = getRangeTotal(connection);
+                        final int segments = getSegmentCount(contentLength);
+                        state = DownloadState.create(targetFile, rawETag, contentLength, segments);
+                        if(segments > 1)
+                            log(String.format("Downloading %d bytes in %d segments", new Object[] { Long.valueOf(contentLength), Integer.valueOf(segments) }));
+                    }
+                    else if(state == null && isResumable(connection, rawETag))
+                        // A 200 to a range request means the mirror doesn't do ranges, so this body is the only segment.
+                        state = DownloadState.create(targetFile, rawETag, getContentLength(connection), 1);
 
-                    final MessageDigest digest = MessageDigest.getInstance("MD5");
+                    verifier = new ChunkVerifier(targetFile, eTag.contains("-") ? CompletableFuture.<ChunkManifest>completedFuture(null) : fetchChunkManifest(mirror, eTag));
+                    final InputStream inputStream = probed ? null : connection.getInputStream();
 
-                    final long startDownload = System.nanoTime();
+                    final Telemetry.Span transferSpan = Telemetry.start("transfer").set("kind", state == null ? "stream" : headOffset > 0L ? "resume" : "ranges").set("segments", Integer.valueOf(state == null ? 1 : state.getSegments()));
                     long bytesRead = 0L;
-                    final byte[] buffer = new byte[65536];
+                    String md5sum = null;
                     try {
-                        int read = inputStream.read(buffer);
-                        while(read >= 1) {
-                            bytesRead += read;
-                            digest.update(buffer, 0, read);
-                            outputStream.write(buffer, 0, read);
-                            read = inputStream.read(buffer);
+                        final long startDownload = System.nanoTime();
+                        peakRate.set(0L);
+                        progress.start(state == null ? 0L : state.getCompletedBytes(), state == null ? getContentLength(connection) : state.getLength());
+                        if(state != null)
+                            try {
+                                bytesRead = new SegmentedDownload(this, url, state, targetFile, verifier).download(inputStream, headOffset);
+                            }
+                            finally {
+                                if(inputStream != null) {
+                                    inputStream.close();
+                                    connection.disconnect();
+                                }
+                            }
+                        else {
+                            final RandomAccessFile file = new RandomAccessFile(targetFile, "rw");
+                            final MessageDigest digest = MessageDigest.getInstance("MD5");
+                            try {
+                                file.setLength(Math.max(0L, getContentLength(connection)));
+                                bytesRead = transfer(Channels.newChannel(inputStream), file.getChannel(), digest, verifier);
+                                if(file.length() != bytesRead)
+                                    file.setLength(bytesRead);
+                                file.getChannel().force(true);
+                            }
+                            finally {
+                                inputStream.close();
+                                file.close();
+                            }
+                            md5sum = String.format("%1$032x", new Object[] { new BigInteger(1, digest.digest()) });
                         }
+                        final long elapsedDownload = System.nanoTime() - startDownload;
+                        progress.finish();
+
+                        final float elapsedSeconds = (1L + elapsedDownload) / 1.0E+09F;
+                        final float kbRead = bytesRead / 1024.0F;
+                        log(String.format("Downloaded %.1fkb in %ds at %.1fkb/s", new Object[] { Float.valueOf(kbRead), Integer.valueOf((int) elapsedSeconds), Float.valueOf(kbRead / elapsedSeconds) }));
+                        transferSpan.set("bytes", Long.valueOf(bytesRead)).set("kbPerSecond", Float.valueOf(kbRead / elapsedSeconds)).set("peakKbPerSecond", Long.valueOf(peakRate.get() / 1024L)).set("rateLimit", Long.valueOf(throttle.getRate() / 1024L));
+                    }
+                    catch(final Exception e) {
+                        transferSpan.set("error", e.toString());
+                        throw e;
                     }
                     finally {
-                        inputStream.close();
-                        outputStream.close();
+                        transferSpan.end();
                     }
-                    final long elapsedDownload = System.nanoTime() - startDownload;
 
-                    final float elapsedSeconds = (1L + elapsedDownload) / 1.0E+09F;
-                    final float kbRead = bytesRead / 1024.0F;
-                    log(String.format("Downloaded %.1fkb in %ds at %.1fkb/s", new Object[] { Float.valueOf(kbRead), Integer.valueOf((int) elapsedSeconds), Float.valueOf(kbRead / elapsedSeconds) }));
+                    final List<Integer> badChunks = verifier.finish();
+                    final ChunkManifest chunkManifest = verifier.getManifest();
+                    if(badChunks != null && !badChunks.isEmpty() && (md5sum == null || !eTag.equalsIgnoreCase(md5sum))) {
+                        log(new StringBuilder().append(badChunks.size()).append(" of ").append(chunkManifest.getChunkCount()).append(" chunks are corrupt, re-fetching only those").toString());
+                        if(repair(url, rawETag, chunkManifest, badChunks))
+                            md5sum = chunkManifest.getMd5().toLowerCase();
+                    }
+                    else if(badChunks != null && md5sum == null)
+                        md5sum = chunkManifest.getMd5().toLowerCase();
 
-                    final String md5sum = String.format("%1$032x", new Object[] { new BigInteger(1, digest.digest()) });
-                    if(!eTag.contains("-") && !eTag.equalsIgnoreCase(md5sum))
+                    if(md5sum == null)
+                        md5sum = bootstrap.computeMd5(targetFile);
+                    DownloadState.delete(targetFile);
+                    if(!eTag.contains("-") && !eTag.equalsIgnoreCase(md5sum)) {
                         log("After downloading, the MD5 hash didn't match. Retrying");
+                        targetFile.delete();
+                    }
                     else {
+                        if(chunkManifest != null && chunkManifest.getMd5().equalsIgnoreCase(md5sum))
+                            try {
+                                chunkManifest.save(ChunkManifest.getFile(targetFile));
+                            }
+                            catch(final IOException ignored) {
+                            }
+                        bootstrap.cacheMd5(targetFile, md5sum);
+                        bootstrap.getUpdateCheckCache().recordDownloaded(md5sum, connection);
+                        circuitBreaker.recordSuccess();
                         controller.hasDownloadedLatch.countDown();
                         return;
                     }
                 }
-                else if(code == 4)
-                    log("Remote file not found.");
+                else if(connection.getResponseCode() == 416) {
+                    release(connection);
+                    if(partial == null)
+                        probeRanges = false;
+                    log("Partial download is no longer valid, starting over.");
+                    DownloadState.discard(targetFile);
+                }
+                else if(code == 5 || connection.getResponseCode() == HttpURLConnection.HTTP_CLIENT_TIMEOUT || connection.getResponseCode() == 429) {
+                    retryAfter = getRetryAfter(connection);
+                    release(connection);
+                    log(new StringBuilder().append("Server unavailable (HTTP ").append(connection.getResponseCode()).append(")").toString());
+                }
+                else if(code == 4) {
+                    release(connection);
+                    log(new StringBuilder().append("Remote file not found (HTTP ").append(connection.getResponseCode()).append(")").toString());
+                    outcome = NEXT_MIRROR;
+                }
                 else {
+                    release(connection);
+                    circuitBreaker.recordSuccess();
+                    if(connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        if(partial != null)
+                            DownloadState.discard(targetFile);
+                        if(currentMd5 != null)
+                            bootstrap.getUpdateCheckCache().recordNotModified(currentMd5, connection);
+                    }
                     controller.foundUpdate.set(false);
                     controller.foundUpdateLatch.countDown();
                     log("No update found.");
@@ -132,14 +564,219 @@ public class Downloader implements Runnable {
                 }
             }
             catch(final Exception e) {
+                if(verifier != null)
+                    verifier.close();
+                connectSpan.set("error", e.toString()).end();
                 log(new StringBuilder().append("Exception: ").append(e.toString()).toString());
                 suggestHelp(e);
+                outcome = classify(e);
+            }
+
+            if(outcome == GIVE_UP)
+                break;
+
+            if(outcome == NEXT_MIRROR) {
+                mirrors.recordFailure(mirror);
+                candidates.remove(mirror);
+                if(candidates.isEmpty())
+                    break;
+                log(new StringBuilder().append("Skipping ").append(mirror).append(" for this run, trying ").append(candidates.get(mirrorIndex % candidates.size())).toString());
+                continue;
+            }
+
+            final long delay = controller.getRetryPolicy().getDelay(retries, retryAfter);
+            if(delay < 0L) {
+                log(new StringBuilder().append("Giving up after ").append(retries).append(retries == 1 ? " attempt" : " attempts").toString());
+                break;
+            }
+
+            mirrorIndex = failOver(mirrors, candidates, mirrorIndex);
+            log(new StringBuilder().append("Retrying in ").append(delay).append("ms").toString());
+            try {
+                Thread.sleep(delay);
+            }
+            catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
 
+        circuitBreaker.recordFailure();
+        controller.foundUpdateLatch.countDown();
         log("Unable to download remote file. Check your internet connection/proxy settings.");
     }
 
+    private int classify(final Exception e) {
+        if(e instanceof BindException || e instanceof SSLHandshakeException)
+            return GIVE_UP;
+        if(e instanceof UnknownHostException || e instanceof MalformedURLException || e instanceof FileNotFoundException)
+            return NEXT_MIRROR;
+        if(e instanceof IOException)
+            return RETRY;
+
+        return GIVE_UP;
+    }
+
+    private long getRetryAfter(final HttpURLConnection connection) {
+        final String retryAfter = connection.getHeaderField("Retry-After");
+        if(retryAfter == null)
+            return 0L;
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000L;
+        }
+        catch(final NumberFormatException ignored) {
+            return 0L;
+        }
+    }
+
+    private long transfer(final ReadableByteChannel source, final FileChannel target, final MessageDigest digest, final ChunkVerifier verifier) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long position = 0L;
+        int read = source.read(buffer);
+        while(read >= 0) {
+            throttle.acquire(read);
+            progress.advance(read);
+            buffer.flip();
+            digest.update(buffer.duplicate());
+            final long from = position;
+            while(buffer.hasRemaining())
+                position += target.write(buffer, position);
+            verifier.onProgress(0L, from, position);
+            buffer.clear();
+            read = source.read(buffer);
+        }
+        return position;
+    }
+
+    private CompletableFuture<ChunkManifest> fetchChunkManifest(final String mirror, final String md5) {
+        return CompletableFuture.supplyAsync(new Supplier<ChunkManifest>() {
+            public ChunkManifest get() {
+                HttpURLConnection connection = null;
+                try {
+                    connection = getConnection(Mirrors.resolve(mirror, BootstrapConstants.CHUNKS_FILE));
+                    connection.setUseCaches(false);
+                    connection.setConnectTimeout(FAILOVER_CONNECT_TIMEOUT);
+                    connection.setReadTimeout(10000);
+                    if(connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                        release(connection);
+                        return null;
+                    }
+
+                    final InputStreamReader reader = new InputStreamReader(connection.getInputStream(), "UTF-8");
+                    try {
+                        final ChunkManifest manifest = ChunkManifest.parse(reader);
+                        return md5.equalsIgnoreCase(manifest.getMd5()) ? manifest : null;
+                    }
+                    finally {
+                        reader.close();
+                    }
+                }
+                catch(final IOException e) {
+                    log(new StringBuilder().append("No usable chunk manifest: ").append(e.toString()).toString());
+                    if(connection != null)
+                        connection.disconnect();
+                    return null;
+                }
+            }
+        }, Bootstrap.getWorkers());
+    }
+
+    private boolean repair(final URL url, final String rawETag, final ChunkManifest manifest, final List<Integer> badChunks) {
+        final Telemetry.Span span = Telemetry.start("repair").set("chunks", Integer.valueOf(badChunks.size()));
+        try {
+            long bytes = 0L;
+            final FileChannel channel = FileChannel.open(targetFile.toPath(), StandardOpenOption.WRITE);
+            try {
+                int first = 0;
+                while(first < badChunks.size()) {
+                    // Runs of adjacent corrupt chunks share one range request.
+                    int last = first;
+                    while(last + 1 < badChunks.size() && badChunks.get(last + 1).intValue() == badChunks.get(last).intValue() + 1)
+                        last++;
+
+                    bytes += fetchRange(url, rawETag, channel, manifest.getStart(badChunks.get(first).intValue()), manifest.getEnd(badChunks.get(last).intValue()));
+                    first = last + 1;
+                }
+                channel.force(true);
+            }
+            finally {
+                channel.close();
+            }
+
+            final List<Integer> remaining = ChunkVerifier.verify(targetFile, manifest);
+            span.set("bytes", Long.valueOf(bytes)).set("remaining", Integer.valueOf(remaining == null ? -1 : remaining.size()));
+            return remaining != null && remaining.isEmpty();
+        }
+        catch(final IOException e) {
+            log(new StringBuilder().append("Repair failed: ").append(e.toString()).toString());
+            span.set("error", e.toString());
+            return false;
+        }
+        finally {
+            span.end();
+        }
+    }
+
+    private long fetchRange(final URL url, final String rawETag, final FileChannel target, final long start, final long end) throws IOException {
+        final HttpURLConnection connection = getConnection(url);
+        connection.setUseCaches(false);
+        connection.setRequestProperty("Range", new StringBuilder().append("bytes=").append(start).append("-").append(end - 1L).toString());
+        connection.setRequestProperty("If-Range", rawETag);
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(10000);
+
+        if(connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+            release(connection);
+            throw new IOException(new StringBuilder().append("Server ignored range request for bytes ").append(start).append("-").append(end - 1L).append(" (HTTP ").append(connection.getResponseCode()).append(")").toString());
+        }
+
+        final ReadableByteChannel source = Channels.newChannel(connection.getInputStream());
+        try {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            long position = start;
+            while(position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                if(source.read(buffer) < 0)
+                    throw new EOFException(new StringBuilder().append("Range ended ").append(end - position).append(" bytes early").toString());
+
+                buffer.flip();
+                while(buffer.hasRemaining())
+                    position += target.write(buffer, position);
+            }
+        }
+        finally {
+            source.close();
+        }
+        return end - start;
+    }
+
+    private void release(final HttpURLConnection connection) {
+        InputStream inputStream = connection.getErrorStream();
+        try {
+            if(inputStream == null)
+                inputStream = connection.getInputStream();
+            final byte[] buffer = new byte[4096];
+            int read = inputStream.read(buffer);
+            while(read >= 0)
+                read = inputStream.read(buffer);
+        }
+        catch(final IOException ignored) {
+        }
+        finally {
+            Bootstrap.closeSilently(inputStream);
+        }
+    }
+
+    private int failOver(final Mirrors mirrors, final List<String> ordered, final int mirrorIndex) {
+        mirrors.recordFailure(ordered.get(mirrorIndex % ordered.size()));
+        if(ordered.size() > 1) {
+            log(new StringBuilder().append("Failing over to ").append(ordered.get((mirrorIndex + 1) % ordered.size())).append(DownloadState.isPartial(targetFile) ? ", resuming the partial download if its ETag matches" : "").toString());
+            return mirrorIndex + 1;
+        }
+        return mirrorIndex;
+    }
+
     public void suggestHelp(final Throwable t) {
         if(t instanceof BindException)
             log("Recognized exception: the likely cause is a broken ipv4/6 stack. Check your TCP/IP settings.");
@@ -0,0 +1,105 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+
+public class HashCache {
+    private static String getKey(final File file) {
+        try {
+            return file.getCanonicalPath();
+        }
+        catch(final IOException ignored) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static String getStamp(final File file) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            if(!attributes.isRegularFile())
+                return null;
+
+            final Object fileKey = attributes.fileKey();
+            return new StringBuilder().append(attributes.size()).append(':').append(attributes.lastModifiedTime().toMillis()).append(':').append(fileKey == null ? "-" : fileKey.toString()).toString();
+        }
+        catch(final IOException ignored) {
+            return null;
+        }
+    }
+
+    private final File file;
+    private final Properties entries = new Properties();
+
+    public HashCache(final File file) {
+        this.file = file;
+
+        if(file.isFile()) {
+            InputStream inputStream = null;
+            try {
+                inputStream = new FileInputStream(file);
+                entries.load(inputStream);
+            }
+            catch(final IOException ignored) {
+                entries.clear();
+            }
+            finally {
+                Bootstrap.closeSilently(inputStream);
+            }
+        }
+    }
+
+    public synchronized String get(final File target) {
+        final String entry = entries.getProperty(getKey(target));
+        final String stamp = getStamp(target);
+        if(entry == null || stamp == null)
+            return null;
+
+        final int separator = entry.lastIndexOf('=');
+        if(separator < 0 || !entry.substring(0, separator).equals(stamp))
+            return null;
+
+        return entry.substring(separator + 1);
+    }
+
+    public synchronized void put(final File target, final String md5) {
+        final String stamp = getStamp(target);
+        if(stamp == null || md5 == null)
+            return;
+
+        entries.setProperty(getKey(target), new StringBuilder().append(stamp).append('=').append(md5.toLowerCase()).toString());
+        save();
+    }
+
+    public synchronized void remove(final File target) {
+        if(entries.remove(getKey(target)) != null)
+            save();
+    }
+
+    private void save() {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            entries.store(outputStream, "Cached launcher hashes, keyed by path. Values are size:mtime:fileKey=md5");
+            outputStream.close();
+            outputStream = null;
+
+            if(!tempFile.renameTo(file)) {
+                file.delete();
+                tempFile.renameTo(file);
+            }
+        }
+        catch(final IOException ignored) {
+        }
+        finally {
+            Bootstrap.closeSilently(outputStream);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package net.minecraft.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class LauncherClassLoader extends URLClassLoader {
+    private static final int MAGIC = 0x4d43434d;
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    public static void buildIndex(final File jar, final File indexFile) throws IOException {
+        final File tempFile = new File(indexFile.getPath() + ".tmp");
+        final ZipFile zipFile = new ZipFile(jar);
+        try {
+            final List<ZipEntry> entries = new ArrayList<ZipEntry>();
+            final Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+            while(enumeration.hasMoreElements()) {
+                final ZipEntry entry = enumeration.nextElement();
+                if(!entry.isDirectory() && entry.getName().endsWith(".class") && entry.getSize() >= 0L)
+                    entries.add(entry);
+            }
+            // Classes defined from the index carry no signers, a signed jar's index stays empty so they all come
+            // through the URLClassLoader and keep theirs.
+            if(isSigned(zipFile))
+                entries.clear();
+
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536));
+            try {
+                output.writeInt(MAGIC);
+                output.writeLong(jar.length());
+                output.writeLong(jar.lastModified());
+
+                // Kept with the index so packages get the jar's titles, versions and sealing without opening it.
+                final ZipEntry manifestEntry = zipFile.getEntry(MANIFEST_NAME);
+                final byte[] manifest = manifestEntry == null ? new byte[0] : readFully(zipFile, manifestEntry);
+                output.writeInt(manifest.length);
+                output.write(manifest);
+
+                output.writeInt(entries.size());
+                for(final ZipEntry entry : entries) {
+                    output.writeUTF(entry.getName());
+                    output.writeInt((int) entry.getSize());
+                }
+
+                final byte[] buffer = new byte[65536];
+                for(final ZipEntry entry : entries) {
+                    final InputStream input = zipFile.getInputStream(entry);
+                    try {
+                        long remaining = entry.getSize();
+                        while(remaining > 0L) {
+                            final int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                            if(read < 0)
+                                throw new IOException(new StringBuilder().append("Truncated entry ").append(entry.getName()).toString());
+                            output.write(buffer, 0, read);
+                            remaining -= read;
+                        }
+                    }
+                    finally {
+                        input.close();
+                    }
+                }
+            }
+            finally {
+                output.close();
+            }
+        }
+        finally {
+            zipFile.close();
+        }
+
+        if(!tempFile.renameTo(indexFile)) {
+            indexFile.delete();
+            if(!tempFile.renameTo(indexFile))
+                throw new IOException(new StringBuilder().append("Unable to write ").append(indexFile.getAbsolutePath()).toString());
+        }
+    }
+
+    private static boolean isSigned(final ZipFile zipFile) {
+        final Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+        while(enumeration.hasMoreElements()) {
+            final String name = enumeration.nextElement().getName().toUpperCase(Locale.ROOT);
+            if(name.startsWith("META-INF/") && name.endsWith(".SF") && name.indexOf('/', 9) < 0)
+                return true;
+        }
+        return false;
+    }
+
+    private static byte[] readFully(final ZipFile zipFile, final ZipEntry entry) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final InputStream input = zipFile.getInputStream(entry);
+        try {
+            final byte[] buffer = new byte[4096];
+            int read = input.read(buffer);
+            while(read >= 0) {
+                output.write(buffer, 0, read);
+                read = input.read(buffer);
+            }
+        }
+        finally {
+            input.close();
+        }
+        return output.toByteArray();
+    }
+
+    private static URL toUrl(final File jar) {
+        try {
+            return jar.toURI().toURL();
+        }
+        catch(final MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private final CodeSource codeSource;
+    private final Map<String, int[]> index = new HashMap<String, int[]>();
+    private final ConcurrentLinkedQueue<String> loadedClasses = new ConcurrentLinkedQueue<String>();
+
+    private ByteBuffer classes;
+    private java.util.jar.Manifest manifest;
+
+    public LauncherClassLoader(final File jar, final File indexFile) {
+        super(new URL[] { toUrl(jar) });
+        codeSource = new CodeSource(toUrl(jar), (CodeSigner[]) null);
+
+        if(indexFile.isFile())
+            try {
+                loadIndex(jar, indexFile);
+            }
+            catch(final IOException ignored) {
+                index.clear();
+                classes = null;
+                manifest = null;
+            }
+    }
+
+    private void loadIndex(final File jar, final File indexFile) throws IOException {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 65536));
+        long dataLength = 0L;
+        try {
+            if(input.readInt() != MAGIC || input.readLong() != jar.length() || input.readLong() != jar.lastModified())
+                return;
+
+            final byte[] manifestBytes = new byte[input.readInt()];
+            input.readFully(manifestBytes);
+            if(manifestBytes.length > 0)
+                manifest = new java.util.jar.Manifest(new ByteArrayInputStream(manifestBytes));
+
+            final int count = input.readInt();
+            for(int i = 0; i < count; i++) {
+                final String name = input.readUTF();
+                final int length = input.readInt();
+                index.put(name, new int[] { (int) dataLength, length });
+                dataLength += length;
+            }
+        }
+        finally {
+            input.close();
+        }
+
+        final RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+        try {
+            final long dataStart = file.length() - dataLength;
+            classes = file.getChannel().map(FileChannel.MapMode.READ_ONLY, dataStart, dataLength);
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    public boolean isIndexed() {
+        return classes != null;
+    }
+
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        final int[] entry = classes == null ? null : index.get(name.replace('.', '/') + ".class");
+
+        final Class<?> found;
+        if(entry == null)
+            found = super.findClass(name);
+        else {
+            final ByteBuffer buffer = classes.duplicate();
+            buffer.position(entry[0]);
+            buffer.limit(entry[0] + entry[1]);
+
+            definePackageFor(name);
+            found = defineClass(name, buffer, codeSource);
+        }
+
+        loadedClasses.add(name);
+        return found;
+    }
+
+    private void definePackageFor(final String className) {
+        final int dot = className.lastIndexOf('.');
+        if(dot < 0)
+            return;
+
+        final String packageName = className.substring(0, dot);
+        if(getPackage(packageName) == null)
+            try {
+                if(manifest != null)
+                    definePackage(packageName, manifest, codeSource.getLocation());
+                else
+                    definePackage(packageName, null, null, null, null, null, null, null);
+            }
+            catch(final IllegalArgumentException ignored) {
+            }
+    }
+
+    public void warmUp(final File hotClasses) {
+        if(!hotClasses.isFile())
+            return;
+
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                BufferedReader reader = null;
+                try {
+                    reader = new BufferedReader(new FileReader(hotClasses));
+                    String name = reader.readLine();
+                    while(name != null) {
+                        try {
+                            loadClass(name);
+                        }
+                        catch(final Throwable ignored) {
+                        }
+                        name = reader.readLine();
+                    }
+                }
+                catch(final IOException ignored) {
+                }
+                finally {
+                    Bootstrap.closeSilently(reader);
+                }
+            }
+        });
+        thread.setName("Launcher class warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void saveHotClasses(final File hotClasses) throws IOException {
+        final PrintWriter writer = new PrintWriter(hotClasses, "UTF-8");
+        try {
+            for(final String name : loadedClasses)
+                writer.println(name);
+        }
+        finally {
+            writer.close();
+        }
+    }
+}
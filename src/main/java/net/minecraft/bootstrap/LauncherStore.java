@@ -0,0 +1,193 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+public class LauncherStore {
+    private static final int MAX_ENTRIES = 5;
+    private static final long MAX_BYTES = 67108864L;
+
+    private static final String ACTIVE = "active";
+    private static final String PINNED = "pinned";
+    private static final String USED_PREFIX = "used.";
+
+    private final File directory;
+    private final File stateFile;
+    private final Properties state = new Properties();
+
+    public LauncherStore(final File directory) {
+        this.directory = directory;
+        stateFile = new File(directory, "store.properties");
+
+        if(stateFile.isFile()) {
+            InputStream inputStream = null;
+            try {
+                inputStream = new FileInputStream(stateFile);
+                state.load(inputStream);
+            }
+            catch(final IOException ignored) {
+                state.clear();
+            }
+            finally {
+                Bootstrap.closeSilently(inputStream);
+            }
+        }
+    }
+
+    public File getEntry(final String md5) {
+        return new File(directory, md5.toLowerCase() + ".jar");
+    }
+
+    public String getActive() {
+        return state.getProperty(ACTIVE);
+    }
+
+    public String getPinned() {
+        return state.getProperty(PINNED);
+    }
+
+    public List<String> getEntries() {
+        final List<String> entries = new ArrayList<String>();
+        final File[] files = directory.listFiles();
+        if(files != null)
+            for(final File file : files)
+                if(file.isFile() && file.getName().endsWith(".jar"))
+                    entries.add(file.getName().substring(0, file.getName().length() - 4));
+
+        Collections.sort(entries, new Comparator<String>() {
+            public int compare(final String a, final String b) {
+                final long usedA = getLastUsed(a);
+                final long usedB = getLastUsed(b);
+                return usedA < usedB ? 1 : usedA > usedB ? -1 : 0;
+            }
+        });
+        return entries;
+    }
+
+    private long getLastUsed(final String md5) {
+        try {
+            return Long.parseLong(state.getProperty(USED_PREFIX + md5, "0"));
+        }
+        catch(final NumberFormatException ignored) {
+            return 0L;
+        }
+    }
+
+    public String resolve(final String prefix) {
+        String found = null;
+        for(final String md5 : getEntries())
+            if(md5.startsWith(prefix.toLowerCase())) {
+                if(found != null)
+                    throw new FatalBootstrapError(new StringBuilder().append("Launcher hash prefix ").append(prefix).append(" is ambiguous").toString());
+                found = md5;
+            }
+        return found;
+    }
+
+    public String getPrevious() {
+        final String active = getActive();
+        for(final String md5 : getEntries())
+            if(!md5.equals(active))
+                return md5;
+        return null;
+    }
+
+    public void remember(final File launcherJar, final String md5) throws IOException {
+        final File entry = getEntry(md5);
+        if(!entry.isFile()) {
+            if(!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException(new StringBuilder().append("Unable to create ").append(directory.getAbsolutePath()).toString());
+
+            link(launcherJar, entry);
+        }
+
+        markActive(md5.toLowerCase());
+    }
+
+    public void activate(final String md5, final File launcherJar) throws IOException {
+        final File entry = getEntry(md5);
+        if(!entry.isFile())
+            throw new IOException(new StringBuilder().append("No stored launcher ").append(md5).toString());
+
+        final File tempFile = new File(launcherJar.getPath() + ".tmp");
+        tempFile.delete();
+        link(entry, tempFile);
+
+        if(!tempFile.renameTo(launcherJar)) {
+            launcherJar.delete();
+            if(!tempFile.renameTo(launcherJar))
+                throw new IOException(new StringBuilder().append("Unable to activate ").append(entry.getAbsolutePath()).toString());
+        }
+
+        markActive(md5.toLowerCase());
+    }
+
+    public void setPinned(final String md5) throws IOException {
+        if(md5 == null)
+            state.remove(PINNED);
+        else
+            state.setProperty(PINNED, md5.toLowerCase());
+        save();
+    }
+
+    private void link(final File source, final File target) throws IOException {
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        }
+        catch(final Exception ignored) {
+            Bootstrap.copyFile(source, target);
+        }
+    }
+
+    private void markActive(final String md5) throws IOException {
+        state.setProperty(ACTIVE, md5);
+        state.setProperty(USED_PREFIX + md5, String.valueOf(System.currentTimeMillis()));
+        evict();
+        save();
+    }
+
+    private void evict() {
+        final String active = getActive();
+        final String pinned = getPinned();
+
+        int kept = 0;
+        long bytes = 0L;
+        for(final String md5 : getEntries()) {
+            final File entry = getEntry(md5);
+            final boolean protectedEntry = md5.equals(active) || md5.equals(pinned);
+            if(protectedEntry || kept < MAX_ENTRIES && bytes + entry.length() <= MAX_BYTES) {
+                kept++;
+                bytes += entry.length();
+            }
+            else if(entry.delete())
+                state.remove(USED_PREFIX + md5);
+        }
+    }
+
+    private void save() throws IOException {
+        final File tempFile = new File(stateFile.getPath() + ".tmp");
+        final OutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            state.store(outputStream, "Stored launchers, keyed by MD5");
+        }
+        finally {
+            outputStream.close();
+        }
+
+        if(!tempFile.renameTo(stateFile)) {
+            stateFile.delete();
+            if(!tempFile.renameTo(stateFile))
+                throw new IOException(new StringBuilder().append("Unable to write ").append(stateFile.getAbsolutePath()).toString());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package net.minecraft.bootstrap;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class LogSink {
+    private static final int TAIL_SIZE = 1024;
+    private static final int MAX_PENDING = 4096;
+
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<String>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicReferenceArray<String> tail = new AtomicReferenceArray<String>(TAIL_SIZE);
+    private final AtomicLong written = new AtomicLong();
+    private final boolean queueing;
+
+    private volatile Runnable listener;
+
+    public LogSink(final boolean queueing) {
+        this.queueing = queueing;
+    }
+
+    // Told when lines start queueing up again after a drain, so the reader doesn't have to poll.
+    public void setListener(final Runnable listener) {
+        this.listener = listener;
+    }
+
+    public void append(final String string) {
+        final long index = written.getAndIncrement();
+        tail.set((int) (index % TAIL_SIZE), string);
+
+        if(!queueing)
+            return;
+
+        pending.offer(string);
+        final int count = pendingCount.incrementAndGet();
+        if(count > MAX_PENDING && pending.poll() != null)
+            pendingCount.decrementAndGet();
+        else if(count == 1 && listener != null)
+            listener.run();
+    }
+
+    public boolean drain(final StringBuilder builder) {
+        final int length = builder.length();
+        String string = pending.poll();
+        while(string != null) {
+            pendingCount.decrementAndGet();
+            builder.append(string);
+            string = pending.poll();
+        }
+        return builder.length() > length;
+    }
+
+    public String getTail() {
+        final long end = written.get();
+        final StringBuilder builder = new StringBuilder();
+        for(long index = Math.max(0L, end - TAIL_SIZE); index < end; index++) {
+            final String string = tail.get((int) (index % TAIL_SIZE));
+            if(string != null)
+                builder.append(string);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,234 @@
+package net.minecraft.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.tukaani.xz.LZMAInputStream;
+
+public class LzmaDownload {
+    private static final int BUFFER_SIZE = 65536;
+    private static final int PIPE_SIZE = 1048576;
+
+    // Buffers handed from one stage to the next through a bounded queue. Piped streams only look for new data
+    // or free space once a second, a stage waiting here wakes as soon as the other one puts or takes a buffer.
+    private static class Pipe extends InputStream {
+        private static final byte[] END = new byte[0];
+
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(PIPE_SIZE / BUFFER_SIZE);
+        private volatile boolean closed;
+
+        private byte[] current;
+        private int position;
+
+        public void send(final byte[] buffer, final int length) throws IOException {
+            put(Arrays.copyOf(buffer, length));
+        }
+
+        public void finish() {
+            try {
+                put(END);
+            }
+            catch(final IOException ignored) {
+                // The reader is gone, there's nobody left to tell.
+            }
+        }
+
+        private void put(final byte[] chunk) throws IOException {
+            try {
+                while(!queue.offer(chunk, 100L, TimeUnit.MILLISECONDS))
+                    if(closed)
+                        throw new IOException("Pipe closed");
+            }
+            catch(final InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while passing on download data");
+            }
+        }
+
+        private boolean fill() throws IOException {
+            if(closed)
+                throw new IOException("Pipe closed");
+            if(current == END)
+                return false;
+            if(current != null && position < current.length)
+                return true;
+
+            try {
+                current = queue.take();
+            }
+            catch(final InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for download data");
+            }
+            position = 0;
+            return current != END;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? current[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if(length == 0)
+                return 0;
+            if(!fill())
+                return -1;
+
+            final int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            queue.clear();
+        }
+    }
+
+    private static MessageDigest newMd5() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch(final NoSuchAlgorithmException e) {
+            throw new IOException(e.toString());
+        }
+    }
+
+    private static String toHex(final MessageDigest digest) {
+        return String.format("%1$032x", new Object[] { new BigInteger(1, digest.digest()) });
+    }
+
+    private final File targetFile;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    private long packedBytes;
+    private long unpackedBytes;
+    private String packedMd5;
+    private String unpackedMd5;
+
+    public LzmaDownload(final File targetFile) {
+        this.targetFile = targetFile;
+    }
+
+    public long getPackedBytes() {
+        return packedBytes;
+    }
+
+    public long getUnpackedBytes() {
+        return unpackedBytes;
+    }
+
+    public String getPackedMd5() {
+        return packedMd5;
+    }
+
+    public String getUnpackedMd5() {
+        return unpackedMd5;
+    }
+
+    public void download(final InputStream inputStream) throws IOException {
+        final Pipe packed = new Pipe();
+        final Pipe unpacked = new Pipe();
+
+        final MessageDigest packedDigest = newMd5();
+        final Thread receiver = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    final byte[] buffer = new byte[BUFFER_SIZE];
+                    int read = inputStream.read(buffer);
+                    while(read >= 1) {
+                        packedBytes += read;
+                        packedDigest.update(buffer, 0, read);
+                        packed.send(buffer, read);
+                        read = inputStream.read(buffer);
+                    }
+                }
+                catch(final Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+                finally {
+                    Bootstrap.closeSilently(inputStream);
+                    packed.finish();
+                }
+            }
+        });
+        receiver.setName("Launcher receiver");
+
+        final Thread decompressor = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    final InputStream lzmaIn = new LZMAInputStream(new BufferedInputStream(packed, BUFFER_SIZE));
+                    final byte[] buffer = new byte[BUFFER_SIZE];
+                    int read = lzmaIn.read(buffer);
+                    while(read >= 1) {
+                        unpacked.send(buffer, read);
+                        read = lzmaIn.read(buffer);
+                    }
+                }
+                catch(final Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+                finally {
+                    packed.close();
+                    unpacked.finish();
+                }
+            }
+        });
+        decompressor.setName("Launcher decompressor");
+
+        receiver.start();
+        decompressor.start();
+
+        final MessageDigest unpackedDigest = newMd5();
+        final FileOutputStream outputStream = new FileOutputStream(targetFile);
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read = unpacked.read(buffer);
+            while(read >= 1) {
+                unpackedBytes += read;
+                unpackedDigest.update(buffer, 0, read);
+                outputStream.write(buffer, 0, read);
+                read = unpacked.read(buffer);
+            }
+            outputStream.getChannel().force(true);
+        }
+        catch(final IOException e) {
+            failure.compareAndSet(null, e);
+        }
+        finally {
+            unpacked.close();
+            outputStream.close();
+        }
+
+        try {
+            receiver.join();
+            decompressor.join();
+        }
+        catch(final InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for the download pipeline");
+        }
+
+        final Throwable t = failure.get();
+        if(t instanceof IOException)
+            throw (IOException) t;
+        if(t != null)
+            throw new IOException(t.toString());
+
+        packedMd5 = toHex(packedDigest);
+        unpackedMd5 = toHex(unpackedDigest);
+    }
+}
@@ -0,0 +1,35 @@
+package net.minecraft.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Manifest {
+    public static class Artifact {
+        private String path;
+        private long size;
+        private String hash;
+        private String url;
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+    }
+
+    private List<Artifact> artifacts = new ArrayList<Artifact>();
+
+    public List<Artifact> getArtifacts() {
+        return artifacts == null ? new ArrayList<Artifact>() : artifacts;
+    }
+}
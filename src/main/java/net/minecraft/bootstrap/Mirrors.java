@@ -0,0 +1,201 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class Mirrors {
+    private static final String LATENCY_SUFFIX = ".latency";
+    private static final String FAILURES_SUFFIX = ".failures";
+    private static final long UNKNOWN_LATENCY = 60000L;
+
+    public static String normalize(final String mirror) {
+        return mirror.endsWith("/") ? mirror : mirror + "/";
+    }
+
+    private final File statsFile;
+    private final List<String> mirrors;
+    private final Properties stats = new Properties();
+
+    private List<String> ordered;
+
+    public Mirrors(final File statsFile, final List<String> mirrors) {
+        this.statsFile = statsFile;
+        this.mirrors = new ArrayList<String>();
+        for(final String mirror : mirrors)
+            if(!this.mirrors.contains(normalize(mirror)))
+                this.mirrors.add(normalize(mirror));
+
+        if(statsFile.isFile()) {
+            InputStream inputStream = null;
+            try {
+                inputStream = new FileInputStream(statsFile);
+                stats.load(inputStream);
+            }
+            catch(final IOException ignored) {
+                stats.clear();
+            }
+            finally {
+                Bootstrap.closeSilently(inputStream);
+            }
+        }
+
+        ordered = sortByStats(null);
+    }
+
+    public static URL resolve(final String mirror, final String file) throws MalformedURLException {
+        return new URL(new URL(mirror), file);
+    }
+
+    public synchronized List<String> getOrdered() {
+        return ordered;
+    }
+
+    public List<String> race(final Proxy proxy, final Executor executor, final long timeout) {
+        if(mirrors.size() < 2)
+            return getOrdered();
+
+        final Telemetry.Span span = Telemetry.start("mirrorRace").set("mirrors", Integer.valueOf(mirrors.size()));
+        final AtomicReference<String> winner = new AtomicReference<String>();
+        final AtomicInteger pending = new AtomicInteger(mirrors.size());
+        final CountDownLatch decided = new CountDownLatch(1);
+
+        for(final String mirror : mirrors)
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        final long start = System.nanoTime();
+                        if(probe(proxy, mirror, (int) timeout)) {
+                            recordSuccess(mirror, (System.nanoTime() - start) / 1000000L);
+                            if(winner.compareAndSet(null, mirror))
+                                decided.countDown();
+                        }
+                        else
+                            recordFailure(mirror);
+                    }
+                    finally {
+                        if(pending.decrementAndGet() == 0)
+                            decided.countDown();
+                    }
+                }
+            });
+
+        try {
+            decided.await(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch(final InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+
+        final List<String> result = sortByStats(winner.get());
+        synchronized(this) {
+            ordered = result;
+        }
+        span.set("winner", winner.get()).end();
+        return result;
+    }
+
+    private boolean probe(final Proxy proxy, final String mirror, final int timeout) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) resolve(mirror, BootstrapConstants.MD5_FILE).openConnection(proxy);
+            connection.setRequestMethod("HEAD");
+            connection.setUseCaches(false);
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            if(connection.getResponseCode() / 100 != 2) {
+                connection.disconnect();
+                return false;
+            }
+
+            // Closing instead of disconnecting leaves the socket in the keep-alive cache for the download.
+            connection.getInputStream().close();
+            return true;
+        }
+        catch(final IOException ignored) {
+            if(connection != null)
+                connection.disconnect();
+            return false;
+        }
+    }
+
+    private synchronized List<String> sortByStats(final String first) {
+        final List<String> result = new ArrayList<String>(mirrors);
+        Collections.sort(result, new Comparator<String>() {
+            public int compare(final String a, final String b) {
+                if(a.equals(first) || b.equals(first))
+                    return a.equals(first) ? b.equals(first) ? 0 : -1 : 1;
+
+                final long failuresA = getStat(a, FAILURES_SUFFIX, 0L);
+                final long failuresB = getStat(b, FAILURES_SUFFIX, 0L);
+                if(failuresA != failuresB)
+                    return failuresA < failuresB ? -1 : 1;
+
+                final long latencyA = getStat(a, LATENCY_SUFFIX, UNKNOWN_LATENCY);
+                final long latencyB = getStat(b, LATENCY_SUFFIX, UNKNOWN_LATENCY);
+                return latencyA < latencyB ? -1 : latencyA > latencyB ? 1 : 0;
+            }
+        });
+        return Collections.unmodifiableList(result);
+    }
+
+    private long getStat(final String mirror, final String suffix, final long defaultValue) {
+        try {
+            return Long.parseLong(stats.getProperty(mirror + suffix, String.valueOf(defaultValue)));
+        }
+        catch(final NumberFormatException ignored) {
+            return defaultValue;
+        }
+    }
+
+    public synchronized void recordSuccess(final String mirror, final long latency) {
+        final String previous = stats.getProperty(mirror + LATENCY_SUFFIX);
+        final long smoothed = previous == null ? latency : (getStat(mirror, LATENCY_SUFFIX, latency) * 3L + latency) / 4L;
+        stats.setProperty(mirror + LATENCY_SUFFIX, String.valueOf(smoothed));
+        stats.setProperty(mirror + FAILURES_SUFFIX, "0");
+        save();
+    }
+
+    public synchronized void recordFailure(final String mirror) {
+        stats.setProperty(mirror + FAILURES_SUFFIX, String.valueOf(getStat(mirror, FAILURES_SUFFIX, 0L) + 1L));
+        save();
+    }
+
+    private void save() {
+        final File tempFile = new File(statsFile.getPath() + ".tmp");
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            stats.store(outputStream, "Mirror latency (smoothed ms) and consecutive failures");
+            outputStream.close();
+            outputStream = null;
+
+            if(!tempFile.renameTo(statsFile)) {
+                statsFile.delete();
+                tempFile.renameTo(statsFile);
+            }
+        }
+        catch(final IOException ignored) {
+        }
+        finally {
+            Bootstrap.closeSilently(outputStream);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package net.minecraft.bootstrap;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+// Writes the patches DeltaPatcher applies, the format is described in the README. Blocks of the source are found in
+// the target with an rsync style rolling checksum, matches become COPY operations and everything in between DATA.
+public class PatchGenerator {
+    private static final int BLOCK_SIZE = 1024;
+
+    public static void generate(final byte[] source, final byte[] target, final OutputStream outputStream) throws IOException {
+        final GZIPOutputStream gzip = new GZIPOutputStream(outputStream, 65536);
+        final DataOutputStream output = new DataOutputStream(gzip);
+        output.writeInt(DeltaPatcher.MAGIC);
+        output.writeInt(DeltaPatcher.VERSION);
+        output.write(md5(source));
+        output.write(md5(target));
+        output.writeLong(target.length);
+
+        final Map<Integer, List<Integer>> blocks = index(source);
+        int literal = 0;
+        int position = 0;
+        int a = 0;
+        int b = 0;
+        if(target.length >= BLOCK_SIZE)
+            for(int i = 0; i < BLOCK_SIZE; i++) {
+                a += target[i] & 0xFF;
+                b += (BLOCK_SIZE - i) * (target[i] & 0xFF);
+            }
+
+        while(position + BLOCK_SIZE <= target.length) {
+            final int match = findMatch(blocks, source, target, position, a & 0xFFFF | b << 16);
+            if(match < 0) {
+                if(position + BLOCK_SIZE < target.length) {
+                    a += (target[position + BLOCK_SIZE] & 0xFF) - (target[position] & 0xFF);
+                    b += a - BLOCK_SIZE * (target[position] & 0xFF);
+                }
+                position++;
+                continue;
+            }
+
+            // Grow the match back into the pending data and forward as far as both files agree.
+            int start = match;
+            int from = position;
+            while(from > literal && start > 0 && source[start - 1] == target[from - 1]) {
+                start--;
+                from--;
+            }
+            int end = match + BLOCK_SIZE;
+            position += BLOCK_SIZE;
+            while(position < target.length && end < source.length && source[end] == target[position]) {
+                end++;
+                position++;
+            }
+
+            writeData(output, target, literal, from);
+            output.writeByte(DeltaPatcher.OP_COPY);
+            output.writeLong(start);
+            output.writeInt(end - start);
+            literal = position;
+
+            a = 0;
+            b = 0;
+            if(position + BLOCK_SIZE <= target.length)
+                for(int i = 0; i < BLOCK_SIZE; i++) {
+                    a += target[position + i] & 0xFF;
+                    b += (BLOCK_SIZE - i) * (target[position + i] & 0xFF);
+                }
+        }
+
+        writeData(output, target, literal, target.length);
+        output.writeByte(DeltaPatcher.OP_END);
+        output.flush();
+        gzip.finish();
+    }
+
+    private static Map<Integer, List<Integer>> index(final byte[] source) {
+        final Map<Integer, List<Integer>> blocks = new HashMap<Integer, List<Integer>>();
+        for(int offset = 0; offset + BLOCK_SIZE <= source.length; offset += BLOCK_SIZE) {
+            int a = 0;
+            int b = 0;
+            for(int i = 0; i < BLOCK_SIZE; i++) {
+                a += source[offset + i] & 0xFF;
+                b += (BLOCK_SIZE - i) * (source[offset + i] & 0xFF);
+            }
+
+            final Integer checksum = Integer.valueOf(a & 0xFFFF | b << 16);
+            List<Integer> offsets = blocks.get(checksum);
+            if(offsets == null) {
+                offsets = new ArrayList<Integer>(1);
+                blocks.put(checksum, offsets);
+            }
+            offsets.add(Integer.valueOf(offset));
+        }
+        return blocks;
+    }
+
+    private static int findMatch(final Map<Integer, List<Integer>> blocks, final byte[] source, final byte[] target, final int position, final int checksum) {
+        final List<Integer> offsets = blocks.get(Integer.valueOf(checksum));
+        if(offsets == null)
+            return -1;
+
+        candidates:
+        for(final Integer offset : offsets) {
+            for(int i = 0; i < BLOCK_SIZE; i++)
+                if(source[offset.intValue() + i] != target[position + i])
+                    continue candidates;
+            return offset.intValue();
+        }
+        return -1;
+    }
+
+    private static void writeData(final DataOutputStream output, final byte[] target, final int from, final int to) throws IOException {
+        if(to <= from)
+            return;
+
+        output.writeByte(DeltaPatcher.OP_DATA);
+        output.writeInt(to - from);
+        output.write(target, from, to - from);
+    }
+
+    private static byte[] md5(final byte[] bytes) throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5").digest(bytes);
+        }
+        catch(final NoSuchAlgorithmException e) {
+            throw new IOException(e.toString());
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final OptionParser optionParser = new OptionParser();
+        final OptionSpec<File> sourceOption = optionParser.accepts("source", "Launcher jar users have installed").withRequiredArg().ofType(File.class).required();
+        final OptionSpec<File> targetOption = optionParser.accepts("target", "Launcher jar to update them to").withRequiredArg().ofType(File.class).required();
+        final OptionSpec<File> mirrorOption = optionParser.accepts("mirror", "Mirror directory to write the patch under").withRequiredArg().ofType(File.class).defaultsTo(new File("."), new File[0]);
+        final OptionSet optionSet = optionParser.parse(args);
+
+        final byte[] source = Files.readAllBytes(optionSet.valueOf(sourceOption).toPath());
+        final byte[] target = Files.readAllBytes(optionSet.valueOf(targetOption).toPath());
+        final File patchFile = new File(optionSet.valueOf(mirrorOption), String.format(BootstrapConstants.PATCH_FILE, new Object[] { DeltaPatcher.toHex(md5(source)) }));
+        patchFile.getParentFile().mkdirs();
+
+        final OutputStream outputStream = new FileOutputStream(patchFile);
+        try {
+            generate(source, target, outputStream);
+        }
+        finally {
+            outputStream.close();
+        }
+        System.out.println(String.format("Wrote %s, %.1fkb instead of %.1fkb", new Object[] { patchFile, Float.valueOf(patchFile.length() / 1024.0F), Float.valueOf(target.length / 1024.0F) }));
+    }
+}
@@ -0,0 +1,59 @@
+package net.minecraft.bootstrap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Progress {
+    private static final long INTERVAL = 1000000000L;
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong nextEvent = new AtomicLong();
+
+    private volatile ProgressListener[] listeners = new ProgressListener[0];
+    private volatile long total = -1L;
+
+    private long rate;
+    private long lastBytes;
+    private long lastTime;
+
+    public synchronized void addListener(final ProgressListener listener) {
+        final ProgressListener[] added = new ProgressListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, added, 0, listeners.length);
+        added[listeners.length] = listener;
+        listeners = added;
+    }
+
+    public synchronized void start(final long completed, final long total) {
+        final long now = System.nanoTime();
+        bytes.set(completed);
+        this.total = total;
+        rate = 0L;
+        lastBytes = completed;
+        lastTime = now;
+        nextEvent.set(now + INTERVAL);
+    }
+
+    public void advance(final int count) {
+        final long done = bytes.addAndGet(count);
+        final long now = System.nanoTime();
+        final long next = nextEvent.get();
+        if(now >= next && nextEvent.compareAndSet(next, now + INTERVAL))
+            emit(done, now);
+    }
+
+    public void finish() {
+        emit(bytes.get(), System.nanoTime());
+    }
+
+    private synchronized void emit(final long done, final long now) {
+        if(now > lastTime) {
+            final long sample = (done - lastBytes) * 1000000000L / (now - lastTime);
+            rate = rate == 0L ? sample : (rate * 3L + sample) / 4L;
+            lastBytes = done;
+            lastTime = now;
+        }
+
+        final long remaining = total > 0L && rate > 0L ? Math.max(0L, total - done) * 1000L / rate : -1L;
+        for(final ProgressListener listener : listeners)
+            listener.onProgress(done, total, rate, remaining);
+    }
+}
@@ -0,0 +1,5 @@
+package net.minecraft.bootstrap;
+
+public interface ProgressListener {
+    void onProgress(long bytes, long total, long bytesPerSecond, long remainingMillis);
+}
@@ -0,0 +1,5 @@
+package net.minecraft.bootstrap;
+
+public interface RetryPolicy {
+    long getDelay(int attempt, long minimumDelay);
+}
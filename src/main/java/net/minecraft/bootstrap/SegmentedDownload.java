@@ -0,0 +1,159 @@
+package net.minecraft.bootstrap;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SegmentedDownload {
+    private static final int BUFFER_SIZE = 65536;
+
+    private final Downloader downloader;
+    private final URL url;
+    private final DownloadState state;
+    private final File targetFile;
+    private final ChunkVerifier verifier;
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    public SegmentedDownload(final Downloader downloader, final URL url, final DownloadState state, final File targetFile, final ChunkVerifier verifier) {
+        this.downloader = downloader;
+        this.url = url;
+        this.state = state;
+        this.targetFile = targetFile;
+        this.verifier = verifier;
+    }
+
+    public long download(final InputStream head, final long headOffset) throws IOException {
+        final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+
+        final RandomAccessFile file = new RandomAccessFile(targetFile, "rw");
+        try {
+            if(file.length() != state.getLength())
+                file.setLength(state.getLength());
+            final FileChannel channel = file.getChannel();
+
+            int headSegment = -1;
+            final List<Thread> threads = new ArrayList<Thread>();
+            for(int i = 0; i < state.getSegments(); i++) {
+                if(state.isComplete(i))
+                    continue;
+
+                if(headSegment < 0 && (head == null || state.getOffset(i) == headOffset)) {
+                    headSegment = i;
+                    continue;
+                }
+
+                final int segment = i;
+                final Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            fetchRange(channel, segment);
+                        }
+                        catch(final IOException e) {
+                            failure.compareAndSet(null, e);
+                        }
+                        finally {
+                            downloader.getController().unregister(Thread.currentThread());
+                        }
+                    }
+                });
+                thread.setName(new StringBuilder().append("Launcher downloader #").append(segment).toString());
+                downloader.getController().register(thread);
+                thread.start();
+                threads.add(thread);
+            }
+
+            try {
+                if(headSegment >= 0 && head != null)
+                    copy(head, channel, headSegment);
+                else if(headSegment >= 0)
+                    fetchRange(channel, headSegment);
+            }
+            catch(final IOException e) {
+                failure.compareAndSet(null, e);
+            }
+
+            try {
+                for(final Thread thread : threads)
+                    thread.join();
+            }
+            catch(final InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for download segments");
+            }
+            finally {
+                channel.force(false);
+                state.save();
+            }
+        }
+        finally {
+            file.close();
+        }
+
+        if(failure.get() != null)
+            throw failure.get();
+
+        return bytesRead.get();
+    }
+
+    private void fetchRange(final FileChannel channel, final int segment) throws IOException {
+        final long start = state.getOffset(segment);
+        final long end = state.getEnd(segment) - 1L;
+
+        final HttpURLConnection connection = downloader.getConnection(url);
+        connection.setRequestProperty("Range", new StringBuilder().append("bytes=").append(start).append("-").append(end).toString());
+        connection.setRequestProperty("If-Range", state.getETag());
+        connection.setConnectTimeout(30000);
+        connection.setReadTimeout(10000);
+
+        if(connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+            connection.disconnect();
+            throw new IOException(new StringBuilder().append("Server ignored range request for bytes ").append(start).append("-").append(end).append(" (HTTP ").append(connection.getResponseCode()).append(")").toString());
+        }
+
+        final InputStream inputStream = connection.getInputStream();
+        try {
+            copy(inputStream, channel, segment);
+        }
+        finally {
+            inputStream.close();
+        }
+    }
+
+    private void copy(final InputStream inputStream, final FileChannel channel, final int segment) throws IOException {
+        final ReadableByteChannel source = Channels.newChannel(inputStream);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final long segmentStart = state.getOffset(segment);
+        long position = segmentStart;
+        final long end = state.getEnd(segment);
+        while(position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            final int read = source.read(buffer);
+            if(read < 0)
+                throw new EOFException(new StringBuilder().append("Segment ").append(segment).append(" ended ").append(end - position).append(" bytes early").toString());
+            downloader.getThrottle().acquire(read);
+            downloader.getProgress().advance(read);
+
+            buffer.flip();
+            while(buffer.hasRemaining())
+                channel.write(buffer, position + buffer.position());
+
+            verifier.onProgress(segmentStart, position, position + read);
+            position += read;
+            bytesRead.addAndGet(read);
+            state.advance(segment, read, channel);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.Gson;
+
+public class Telemetry {
+    public static class Span {
+        private final String name;
+        private final String thread;
+        private final long start;
+        private final Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+        private volatile double duration = -1.0D;
+
+        private transient final long startNanos;
+        // Claimed atomically, so a span ended from two threads is timed and recorded once.
+        private transient final AtomicBoolean ended = new AtomicBoolean();
+
+        private Span(final String name, final long start, final long startNanos) {
+            this.name = name;
+            this.start = start;
+            this.startNanos = startNanos;
+            thread = Thread.currentThread().getName();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getDuration() {
+            return duration;
+        }
+
+        public synchronized Span set(final String key, final Object value) {
+            attributes.put(key, value);
+            return this;
+        }
+
+        public void end() {
+            if(ended.compareAndSet(false, true)) {
+                duration = (System.nanoTime() - startNanos) / 1000000.0D;
+                record(this);
+            }
+        }
+    }
+
+    private static class Run {
+        private final long time = System.currentTimeMillis();
+        private final String version = "5";
+        private final String java = System.getProperty("java.version");
+        private final String os = System.getProperty("os.name");
+        private final List<Span> spans;
+        private final int dropped;
+
+        private Run(final List<Span> spans, final int dropped) {
+            this.spans = spans;
+            this.dropped = dropped;
+        }
+    }
+
+    private static final String FILE_NAME = "telemetry.jsonl";
+    private static final long MAX_FILE_LENGTH = 1048576L;
+    private static final int MAX_SPANS = 4096;
+
+    private static final long JVM_START = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private static final ConcurrentLinkedQueue<Span> SPANS = new ConcurrentLinkedQueue<Span>();
+    private static final AtomicInteger RECORDED = new AtomicInteger();
+    private static final AtomicInteger DROPPED = new AtomicInteger();
+
+    public static Span start(final String name) {
+        return new Span(name, System.currentTimeMillis() - JVM_START, System.nanoTime());
+    }
+
+    public static void recordJvmStart() {
+        final Span span = new Span("jvm", 0L, System.nanoTime());
+        span.ended.set(true);
+        span.duration = System.currentTimeMillis() - JVM_START;
+        record(span);
+    }
+
+    // A long-lived JVM (the daemon, a benchmark) keeps ending spans, only the first ones of a run are kept.
+    private static void record(final Span span) {
+        if(RECORDED.incrementAndGet() > MAX_SPANS) {
+            RECORDED.decrementAndGet();
+            DROPPED.incrementAndGet();
+            return;
+        }
+        SPANS.add(span);
+    }
+
+    public static void reset() {
+        SPANS.clear();
+        RECORDED.set(0);
+        DROPPED.set(0);
+    }
+
+    public static List<Span> getSpans() {
+        final List<Span> spans = new ArrayList<Span>(SPANS);
+        Collections.sort(spans, new Comparator<Span>() {
+            public int compare(final Span a, final Span b) {
+                return a.start < b.start ? -1 : a.start > b.start ? 1 : 0;
+            }
+        });
+        return spans;
+    }
+
+    public static void write(final File workDir) throws IOException {
+        final File file = new File(workDir, FILE_NAME);
+        if(file.length() > MAX_FILE_LENGTH) {
+            final File rotated = new File(workDir, FILE_NAME + ".1");
+            rotated.delete();
+            file.renameTo(rotated);
+        }
+
+        final String line = new Gson().toJson(new Run(getSpans(), DROPPED.get()));
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+        try {
+            writer.write(line);
+            writer.write('\n');
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    public static String getSummary() {
+        final StringBuilder builder = new StringBuilder("Bootstrap timings (ms since JVM start):\n");
+        for(final Span span : getSpans()) {
+            builder.append(String.format("  %7d %9.1fms  %-20s", new Object[] { Long.valueOf(span.start), Double.valueOf(span.duration), span.name }));
+            synchronized(span) {
+                for(final Map.Entry<String, Object> attribute : span.attributes.entrySet())
+                    builder.append(' ').append(attribute.getKey()).append('=').append(attribute.getValue());
+            }
+            builder.append('\n');
+        }
+        if(DROPPED.get() > 0)
+            builder.append("  ").append(DROPPED.get()).append(" more spans were dropped\n");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,134 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+public class Throttle {
+    private static final long LEASE_MILLIS = 100L;
+    private static final int STATE_LENGTH = 16;
+
+    // File locks are held by the whole JVM, so two throttles here (a daemon launch and the background
+    // download of an earlier one) must not lock the same file at once.
+    private static final Object LEASES = new Object();
+
+    private final File sharedFile;
+    private final ByteBuffer sharedState = ByteBuffer.allocate(STATE_LENGTH);
+
+    private RandomAccessFile shared;
+    private boolean sharedBroken;
+
+    private long rate;
+    private long tokens;
+    private long lastRefill = System.nanoTime();
+
+    public Throttle() {
+        this(null);
+    }
+
+    public Throttle(final File sharedFile) {
+        this.sharedFile = sharedFile;
+    }
+
+    // The lock file stays open between leases, the owner closes it once its download is over.
+    public synchronized void close() {
+        Bootstrap.closeSilently(shared);
+        shared = null;
+    }
+
+    public synchronized long getRate() {
+        return rate;
+    }
+
+    public synchronized void setRate(final long bytesPerSecond) {
+        rate = bytesPerSecond;
+        tokens = Math.min(tokens, Math.max(0L, bytesPerSecond));
+        lastRefill = System.nanoTime();
+    }
+
+    public void acquire(final int count) throws InterruptedIOException {
+        final long wait;
+        synchronized(this) {
+            if(rate <= 0L)
+                return;
+
+            tokens -= count;
+            if(tokens >= 0L)
+                return;
+
+            wait = sharedFile != null && !sharedBroken ? lease() : refill();
+        }
+
+        if(wait > 0L)
+            try {
+                Thread.sleep(wait);
+            }
+            catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+    }
+
+    private long refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(rate, tokens + Math.min(now - lastRefill, 1000000000L) * rate / 1000000000L);
+        lastRefill = now;
+        return tokens < 0L ? -tokens * 1000L / rate : 0L;
+    }
+
+    // Every process on the host draws from one bucket kept in the lock file, a lease at a time, so
+    // together they stay under the rate. Debt left by one process delays the next lease of all of them.
+    private long lease() {
+        synchronized(LEASES) {
+            try {
+                return leaseShared();
+            }
+            catch(final IOException ignored) {
+            }
+            catch(final OverlappingFileLockException ignored) {
+            }
+        }
+
+        // Without the shared bucket this process still keeps to the rate on its own, the download goes on.
+        sharedBroken = true;
+        Bootstrap.closeSilently(shared);
+        return refill();
+    }
+
+    private long leaseShared() throws IOException {
+        final long amount = rate * LEASE_MILLIS / 1000L - tokens;
+        if(shared == null)
+            shared = new RandomAccessFile(sharedFile, "rw");
+
+        final FileChannel channel = shared.getChannel();
+        final FileLock lock = channel.lock();
+        try {
+            final long now = System.currentTimeMillis();
+            long available = rate;
+            long last = now;
+
+            sharedState.clear();
+            if(channel.read(sharedState, 0L) == STATE_LENGTH) {
+                available = sharedState.getLong(0);
+                last = sharedState.getLong(8);
+            }
+
+            available = Math.min(rate, available + Math.min(Math.max(0L, now - last), 1000L) * rate / 1000L) - amount;
+
+            sharedState.clear();
+            sharedState.putLong(0, available).putLong(8, now);
+            channel.write(sharedState, 0L);
+
+            tokens += amount;
+            return available < 0L ? -available * 1000L / rate : 0L;
+        }
+        finally {
+            lock.release();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package net.minecraft.bootstrap;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class ThrottledInputStream extends FilterInputStream {
+    private final Throttle throttle;
+    private final Progress progress;
+
+    public ThrottledInputStream(final InputStream in, final Throttle throttle, final Progress progress) {
+        super(in);
+        this.throttle = throttle;
+        this.progress = progress;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int read = super.read();
+        if(read >= 0) {
+            throttle.acquire(1);
+            progress.advance(1);
+        }
+        return read;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int read = super.read(b, off, len);
+        if(read > 0) {
+            throttle.acquire(read);
+            progress.advance(read);
+        }
+        return read;
+    }
+}
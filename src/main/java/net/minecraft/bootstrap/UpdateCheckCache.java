@@ -0,0 +1,142 @@
+package net.minecraft.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class UpdateCheckCache {
+    private static final String MD5 = "md5";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String CHECKED = "checked";
+    private static final String NEXT_CHECK = "nextCheck";
+
+    private final File file;
+    private final Properties state = new Properties();
+
+    private long interval;
+
+    public UpdateCheckCache(final File file) {
+        this.file = file;
+
+        if(file.isFile()) {
+            InputStream inputStream = null;
+            try {
+                inputStream = new FileInputStream(file);
+                state.load(inputStream);
+            }
+            catch(final IOException ignored) {
+                state.clear();
+            }
+            finally {
+                Bootstrap.closeSilently(inputStream);
+            }
+        }
+    }
+
+    private long get(final String key) {
+        try {
+            return Long.parseLong(state.getProperty(key, "0"));
+        }
+        catch(final NumberFormatException ignored) {
+            return 0L;
+        }
+    }
+
+    public synchronized void setInterval(final long interval) {
+        this.interval = interval;
+    }
+
+    public synchronized long getRemaining() {
+        if(interval <= 0L || state.getProperty(MD5) == null)
+            return 0L;
+
+        // A clock that went backwards would otherwise keep the result fresh for too long.
+        final long now = System.currentTimeMillis();
+        if(now < get(CHECKED))
+            return 0L;
+        return Math.max(0L, get(NEXT_CHECK) - now);
+    }
+
+    public synchronized String getFreshMd5() {
+        return getRemaining() > 0L ? state.getProperty(MD5) : null;
+    }
+
+    public synchronized String getETag(final String md5) {
+        return md5 != null && md5.equalsIgnoreCase(state.getProperty(MD5)) ? state.getProperty(ETAG) : null;
+    }
+
+    public synchronized String getLastModified(final String md5) {
+        return md5 != null && md5.equalsIgnoreCase(state.getProperty(MD5)) ? state.getProperty(LAST_MODIFIED) : null;
+    }
+
+    public synchronized void recordNotModified(final String md5, final HttpURLConnection connection) {
+        record(md5, connection);
+    }
+
+    // The validators of the response a launcher was installed from are what the mirror will answer 304 to next time.
+    public synchronized void recordDownloaded(final String md5, final HttpURLConnection connection) {
+        record(md5, connection);
+    }
+
+    private void record(final String md5, final HttpURLConnection connection) {
+        final long ttl = getTtl(connection.getHeaderField("Cache-Control"));
+        final long now = System.currentTimeMillis();
+
+        state.clear();
+        state.setProperty(MD5, md5.toLowerCase());
+        state.setProperty(CHECKED, String.valueOf(now));
+        // Revalidate somewhere in the second half of the TTL so a fleet restarted together spreads out.
+        state.setProperty(NEXT_CHECK, String.valueOf(now + ttl / 2L + (ttl > 1L ? ThreadLocalRandom.current().nextLong(ttl / 2L) : 0L)));
+        if(connection.getHeaderField("ETag") != null)
+            state.setProperty(ETAG, connection.getHeaderField("ETag"));
+        if(connection.getHeaderField("Last-Modified") != null)
+            state.setProperty(LAST_MODIFIED, connection.getHeaderField("Last-Modified"));
+        save();
+    }
+
+    private long getTtl(final String cacheControl) {
+        if(interval <= 0L || cacheControl == null)
+            return Math.max(0L, interval);
+
+        for(final String directive : cacheControl.toLowerCase().split(",")) {
+            final String trimmed = directive.trim();
+            if(trimmed.equals("no-cache") || trimmed.equals("no-store"))
+                return 0L;
+            if(trimmed.startsWith("max-age="))
+                try {
+                    return Math.max(0L, Long.parseLong(trimmed.substring(8).trim()) * 1000L);
+                }
+                catch(final NumberFormatException ignored) {
+                }
+        }
+        return interval;
+    }
+
+    private void save() {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            state.store(outputStream, "Last update check, the validators for the launcher it left installed, and when to revalidate it");
+            outputStream.close();
+            outputStream = null;
+
+            if(!tempFile.renameTo(file)) {
+                file.delete();
+                tempFile.renameTo(file);
+            }
+        }
+        catch(final IOException ignored) {
+        }
+        finally {
+            Bootstrap.closeSilently(outputStream);
+        }
+    }
+}